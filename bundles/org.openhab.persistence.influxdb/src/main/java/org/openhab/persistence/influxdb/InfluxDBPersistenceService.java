@@ -12,21 +12,35 @@
  */
 package org.openhab.persistence.influxdb;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.common.ThreadPoolManager;
+import org.openhab.core.common.registry.RegistryChangeListener;
 import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.Metadata;
 import org.openhab.core.items.MetadataRegistry;
+import org.openhab.core.library.types.StringType;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
@@ -36,14 +50,18 @@ import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.persistence.influxdb.internal.FilterCriteriaQueryCreator;
 import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
+import org.openhab.persistence.influxdb.internal.InfluxDBConnectionMonitor;
+import org.openhab.persistence.influxdb.internal.InfluxDBDiskBuffer;
 import org.openhab.persistence.influxdb.internal.InfluxDBHistoricItem;
 import org.openhab.persistence.influxdb.internal.InfluxDBPersistentItemInfo;
 import org.openhab.persistence.influxdb.internal.InfluxDBRepository;
 import org.openhab.persistence.influxdb.internal.InfluxDBStateConvertUtils;
 import org.openhab.persistence.influxdb.internal.InfluxPoint;
+import org.openhab.persistence.influxdb.internal.InfluxQueryResult;
 import org.openhab.persistence.influxdb.internal.InfluxRow;
 import org.openhab.persistence.influxdb.internal.ItemToStorePointCreator;
 import org.openhab.persistence.influxdb.internal.RepositoryFactory;
+import org.openhab.persistence.influxdb.internal.StoredItemsCountCache;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -81,6 +99,9 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
 
     protected static final String CONFIG_URI = "persistence:influxdb";
 
+    private static final int DISK_BUFFER_REPLAY_INTERVAL_SECONDS = 30;
+    private static final int DISK_BUFFER_REPLAY_BATCH_SIZE = 5000;
+
     // External dependencies
     private final ItemRegistry itemRegistry;
     private final MetadataRegistry metadataRegistry;
@@ -91,6 +112,45 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     // Relax rules because can only be null if component is not active
     private @NonNullByDefault({}) ItemToStorePointCreator itemToStorePointCreator;
     private @NonNullByDefault({}) InfluxDBRepository influxDBRepository;
+    private @NonNullByDefault({}) StoredItemsCountCache storedItemsCountCache;
+    private @NonNullByDefault({}) InfluxDBConnectionMonitor connectionMonitor;
+    private @Nullable InfluxDBDiskBuffer diskBuffer;
+    private @Nullable ScheduledFuture<?> diskBufferReplayJob;
+
+    private final RegistryChangeListener<Item> itemChangeListener = new RegistryChangeListener<Item>() {
+        @Override
+        public void added(Item element) {
+            invalidateItemStoreInfo(element.getName());
+        }
+
+        @Override
+        public void removed(Item element) {
+            invalidateItemStoreInfo(element.getName());
+        }
+
+        @Override
+        public void updated(Item oldElement, Item element) {
+            invalidateItemStoreInfo(oldElement.getName());
+            invalidateItemStoreInfo(element.getName());
+        }
+    };
+
+    private final RegistryChangeListener<Metadata> metadataChangeListener = new RegistryChangeListener<Metadata>() {
+        @Override
+        public void added(Metadata element) {
+            invalidateItemStoreInfo(element);
+        }
+
+        @Override
+        public void removed(Metadata element) {
+            invalidateItemStoreInfo(element);
+        }
+
+        @Override
+        public void updated(Metadata oldElement, Metadata element) {
+            invalidateItemStoreInfo(element);
+        }
+    };
 
     @Activate
     public InfluxDBPersistenceService(final @Reference ItemRegistry itemRegistry,
@@ -108,8 +168,29 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
 
         if (loadConfiguration(config)) {
             itemToStorePointCreator = new ItemToStorePointCreator(configuration, metadataRegistry);
+            itemRegistry.addRegistryChangeListener(itemChangeListener);
+            metadataRegistry.addRegistryChangeListener(metadataChangeListener);
             influxDBRepository = createInfluxDBRepository();
-            influxDBRepository.connect();
+            influxDBRepository.setWriteErrorListener(this::writeFailed);
+            try {
+                influxDBRepository.connect();
+            } catch (RuntimeException e) {
+                logger.warn("Error connecting to InfluxDB, connection will be retried: {}", e.getMessage());
+            }
+            ScheduledExecutorService scheduler = createScheduler();
+            connectionMonitor = new InfluxDBConnectionMonitor(influxDBRepository, scheduler,
+                    TimeUnit.SECONDS.toMillis(Math.max(1, configuration.getHealthCheckInterval())),
+                    TimeUnit.SECONDS.toMillis(Math.max(1, configuration.getReconnectMaxBackoff())),
+                    this::replayDiskBuffer);
+            connectionMonitor.start();
+            storedItemsCountCache = new StoredItemsCountCache(influxDBRepository, scheduler,
+                    TimeUnit.MINUTES.toMillis(Math.max(1, configuration.getItemsCountRefreshInterval())));
+            storedItemsCountCache.start();
+            if (configuration.getDiskBufferMaxSize() > 0) {
+                diskBuffer = createDiskBuffer();
+                diskBufferReplayJob = scheduler.scheduleWithFixedDelay(this::replayDiskBuffer,
+                        DISK_BUFFER_REPLAY_INTERVAL_SECONDS, DISK_BUFFER_REPLAY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            }
         } else {
             logger.error("Cannot load configuration, persistence service wont work");
         }
@@ -122,12 +203,48 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         return RepositoryFactory.createRepository(configuration);
     }
 
+    // Visible for testing
+    protected ScheduledExecutorService createScheduler() {
+        return ThreadPoolManager.getScheduledPool(SERVICE_NAME);
+    }
+
+    private @Nullable InfluxDBDiskBuffer createDiskBuffer() {
+        Path directory = Paths.get(OpenHAB.getUserDataFolder(), "persistence", SERVICE_NAME);
+        try {
+            return new InfluxDBDiskBuffer(directory, configuration.getDiskBufferMaxSize() * 1024L * 1024L);
+        } catch (IOException e) {
+            logger.warn("Disk buffer can't be created in {}, points will be lost while InfluxDB is unreachable: {}",
+                    directory, e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Disconnect from database when service is deactivated
      */
     @Deactivate
     public void deactivate() {
         logger.debug("InfluxDB persistence service deactivated");
+        itemRegistry.removeRegistryChangeListener(itemChangeListener);
+        metadataRegistry.removeRegistryChangeListener(metadataChangeListener);
+        if (connectionMonitor != null) {
+            connectionMonitor.stop();
+            connectionMonitor = null;
+        }
+        if (storedItemsCountCache != null) {
+            storedItemsCountCache.stop();
+            storedItemsCountCache = null;
+        }
+        final ScheduledFuture<?> currentDiskBufferReplayJob = diskBufferReplayJob;
+        if (currentDiskBufferReplayJob != null) {
+            currentDiskBufferReplayJob.cancel(false);
+            diskBufferReplayJob = null;
+        }
+        final InfluxDBDiskBuffer currentDiskBuffer = diskBuffer;
+        if (currentDiskBuffer != null) {
+            currentDiskBuffer.close();
+            diskBuffer = null;
+        }
         if (influxDBRepository != null) {
             influxDBRepository.disconnect();
             influxDBRepository = null;
@@ -170,6 +287,19 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         return configurationIsValid;
     }
 
+    private void invalidateItemStoreInfo(Metadata metadata) {
+        if (SERVICE_NAME.equals(metadata.getUID().getNamespace())) {
+            invalidateItemStoreInfo(metadata.getUID().getItemName());
+        }
+    }
+
+    private void invalidateItemStoreInfo(String itemName) {
+        final ItemToStorePointCreator currentItemToStorePointCreator = itemToStorePointCreator;
+        if (currentItemToStorePointCreator != null) {
+            currentItemToStorePointCreator.invalidate(itemName);
+        }
+    }
+
     @Override
     public String getId() {
         return SERVICE_NAME;
@@ -183,7 +313,10 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     @Override
     public Set<PersistenceItemInfo> getItemInfo() {
         if (influxDBRepository != null && influxDBRepository.isConnected()) {
-            return influxDBRepository.getStoredItemsCount().entrySet().stream()
+            if (!storedItemsCountCache.isLoaded()) {
+                logger.debug("Count of stored points not loaded yet, returning locally written items only");
+            }
+            return storedItemsCountCache.getStoredItemsCount().entrySet().stream()
                     .map(entry -> new InfluxDBPersistentItemInfo(entry.getKey(), entry.getValue()))
                     .collect(Collectors.toUnmodifiableSet());
         } else {
@@ -199,19 +332,59 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
 
     @Override
     public void store(Item item, @Nullable String alias) {
-        if (influxDBRepository != null && influxDBRepository.isConnected()) {
-            InfluxPoint point = itemToStorePointCreator.convert(item, alias);
-            if (point != null) {
-                logger.trace("Storing item {} in InfluxDB point {}", item, point);
+        if (influxDBRepository == null) {
+            logger.debug("store ignored, InfluxDB is not yet connected");
+            return;
+        }
+        InfluxPoint point = itemToStorePointCreator.convert(item, alias);
+        if (point == null) {
+            logger.trace("Ignoring item {} as is cannot be converted to a InfluxDB point", item);
+            return;
+        }
+        final InfluxDBDiskBuffer currentDiskBuffer = diskBuffer;
+        if (influxDBRepository.isConnected() && connectionMonitor.isAvailable()) {
+            logger.trace("Storing item {} in InfluxDB point {}", item, point);
+            try {
                 influxDBRepository.write(point);
-            } else {
-                logger.trace("Ignoring item {} as is cannot be converted to a InfluxDB point", item);
+                storedItemsCountCache.pointWritten(point.getMeasurementName());
+            } catch (RuntimeException e) {
+                connectionMonitor.writeFailed();
+                if (currentDiskBuffer != null) {
+                    logger.debug("Error storing point, it will be buffered on disk: {}", e.getMessage());
+                    currentDiskBuffer.append(point.toLineProtocol());
+                } else {
+                    throw e;
+                }
             }
+        } else if (currentDiskBuffer != null) {
+            logger.trace("InfluxDB is not available, buffering point {} on disk", point);
+            currentDiskBuffer.append(point.toLineProtocol());
         } else {
             logger.debug("store ignored, InfluxDB is not yet connected");
         }
     }
 
+    private void writeFailed(Throwable error) {
+        final InfluxDBConnectionMonitor currentConnectionMonitor = connectionMonitor;
+        if (currentConnectionMonitor != null) {
+            currentConnectionMonitor.writeFailed();
+        }
+    }
+
+    private void replayDiskBuffer() {
+        final InfluxDBDiskBuffer currentDiskBuffer = diskBuffer;
+        final InfluxDBRepository currentRepository = influxDBRepository;
+        final InfluxDBConnectionMonitor currentConnectionMonitor = connectionMonitor;
+        if (currentDiskBuffer != null && currentRepository != null && currentRepository.isConnected()
+                && currentConnectionMonitor != null && currentConnectionMonitor.isAvailable()
+                && !currentDiskBuffer.isEmpty()) {
+            logger.debug("Writing {} bytes of points buffered on disk", currentDiskBuffer.getSize());
+            if (currentDiskBuffer.replay(currentRepository::writeRecords, DISK_BUFFER_REPLAY_BATCH_SIZE)) {
+                logger.info("All points buffered on disk have been written to InfluxDB");
+            }
+        }
+    }
+
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         logger.debug("Got a query for historic points!");
@@ -225,18 +398,46 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
             String query = RepositoryFactory.createQueryCreator(configuration).createQuery(filter,
                     configuration.getRetentionPolicy());
             logger.trace("Query {}", query);
-            List<InfluxRow> results = influxDBRepository.query(query);
-            return results.stream().map(this::mapRow2HistoricItem).collect(Collectors.toList());
+            final InfluxDBRepository currentRepository = influxDBRepository;
+            // Query is executed when results are iterated, and rows are converted while they are received
+            return new InfluxQueryResult<>(() -> currentRepository.queryStream(query),
+                    () -> new HistoricItemConverter()::convert);
         } else {
             logger.debug("query ignored, InfluxDB is not yet connected");
             return Collections.emptyList();
         }
     }
 
-    private HistoricItem mapRow2HistoricItem(InfluxRow row) {
-        State state = InfluxDBStateConvertUtils.objectToState(row.getValue(), row.getItemName(), itemRegistry);
-        return new InfluxDBHistoricItem(row.getItemName(), state,
-                ZonedDateTime.ofInstant(row.getTime(), ZoneId.systemDefault()));
+    private Function<Object, State> createStateConverter(String itemName) {
+        try {
+            return InfluxDBStateConvertUtils.createStateConverter(itemRegistry.getItem(itemName));
+        } catch (ItemNotFoundException e) {
+            logger.info("Could not find item '{}' in registry", itemName);
+            return value -> new StringType(String.valueOf(value));
+        }
+    }
+
+    /**
+     * Converts the rows of a query to {@link HistoricItem}s, resolving the state converter only once per item
+     */
+    private class HistoricItemConverter {
+        private final ZoneId zoneId = ZoneId.systemDefault();
+        private final Map<String, Function<Object, State>> stateConverters = new HashMap<>();
+        private @Nullable String lastItemName;
+        private @Nullable Function<Object, State> lastStateConverter;
+
+        HistoricItem convert(InfluxRow row) {
+            String itemName = row.getItemName();
+            Function<Object, State> stateConverter = lastStateConverter;
+            if (stateConverter == null || !itemName.equals(lastItemName)) {
+                stateConverter = stateConverters.computeIfAbsent(itemName,
+                        InfluxDBPersistenceService.this::createStateConverter);
+                lastItemName = itemName;
+                lastStateConverter = stateConverter;
+            }
+            return new InfluxDBHistoricItem(itemName, stateConverter.apply(row.getValue()),
+                    ZonedDateTime.ofInstant(row.getTime(), zoneId));
+        }
     }
 
     @Override
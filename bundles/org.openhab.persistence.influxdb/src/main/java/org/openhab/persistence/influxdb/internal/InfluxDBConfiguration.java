@@ -40,6 +40,16 @@ public class InfluxDBConfiguration {
     public static final String ADD_CATEGORY_TAG_PARAM = "addCategoryTag";
     public static final String ADD_LABEL_TAG_PARAM = "addLabelTag";
     public static final String ADD_TYPE_TAG_PARAM = "addTypeTag";
+    public static final String ITEMS_COUNT_REFRESH_INTERVAL_PARAM = "itemsCountRefreshInterval";
+    public static final String DISK_BUFFER_MAX_SIZE_PARAM = "diskBufferMaxSize";
+    public static final String GZIP_PARAM = "gzip";
+    public static final String CONNECT_TIMEOUT_PARAM = "connectTimeout";
+    public static final String READ_TIMEOUT_PARAM = "readTimeout";
+    public static final String WRITE_TIMEOUT_PARAM = "writeTimeout";
+    public static final String MAX_IDLE_CONNECTIONS_PARAM = "maxIdleConnections";
+    public static final String KEEP_ALIVE_DURATION_PARAM = "keepAliveDuration";
+    public static final String HEALTH_CHECK_INTERVAL_PARAM = "healthCheckInterval";
+    public static final String RECONNECT_MAX_BACKOFF_PARAM = "reconnectMaxBackoff";
     public static InfluxDBConfiguration NO_CONFIGURATION = new InfluxDBConfiguration(Collections.emptyMap());
     private final Logger logger = LoggerFactory.getLogger(InfluxDBConfiguration.class);
     private final String url;
@@ -54,6 +64,16 @@ public class InfluxDBConfiguration {
     private final boolean addCategoryTag;
     private final boolean addTypeTag;
     private final boolean addLabelTag;
+    private final int itemsCountRefreshInterval;
+    private final int diskBufferMaxSize;
+    private final boolean gzip;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int writeTimeout;
+    private final int maxIdleConnections;
+    private final int keepAliveDuration;
+    private final int healthCheckInterval;
+    private final int reconnectMaxBackoff;
 
     public InfluxDBConfiguration(Map<String, @Nullable Object> config) {
         url = (@NonNull String) config.getOrDefault(URL_PARAM, "http://127.0.0.1:8086");
@@ -68,6 +88,16 @@ public class InfluxDBConfiguration {
         addCategoryTag = getConfigBooleanValue(config, ADD_CATEGORY_TAG_PARAM, false);
         addLabelTag = getConfigBooleanValue(config, ADD_LABEL_TAG_PARAM, false);
         addTypeTag = getConfigBooleanValue(config, ADD_TYPE_TAG_PARAM, false);
+        itemsCountRefreshInterval = getConfigIntegerValue(config, ITEMS_COUNT_REFRESH_INTERVAL_PARAM, 10);
+        diskBufferMaxSize = getConfigIntegerValue(config, DISK_BUFFER_MAX_SIZE_PARAM, 0);
+        gzip = getConfigBooleanValue(config, GZIP_PARAM, false);
+        connectTimeout = getConfigIntegerValue(config, CONNECT_TIMEOUT_PARAM, 10);
+        readTimeout = getConfigIntegerValue(config, READ_TIMEOUT_PARAM, 10);
+        writeTimeout = getConfigIntegerValue(config, WRITE_TIMEOUT_PARAM, 10);
+        maxIdleConnections = getConfigIntegerValue(config, MAX_IDLE_CONNECTIONS_PARAM, 5);
+        keepAliveDuration = getConfigIntegerValue(config, KEEP_ALIVE_DURATION_PARAM, 300);
+        healthCheckInterval = getConfigIntegerValue(config, HEALTH_CHECK_INTERVAL_PARAM, 10);
+        reconnectMaxBackoff = getConfigIntegerValue(config, RECONNECT_MAX_BACKOFF_PARAM, 300);
     }
 
     private static boolean getConfigBooleanValue(Map<String, @Nullable Object> config, String key,
@@ -82,6 +112,20 @@ public class InfluxDBConfiguration {
         }
     }
 
+    private int getConfigIntegerValue(Map<String, @Nullable Object> config, String key, int defaultValue) {
+        Object object = config.get(key);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        } else if (object instanceof String) {
+            try {
+                return Integer.parseInt(((String) object).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value {} for {}, using default {}", object, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     private InfluxDBVersion parseInfluxVersion(@Nullable Object value) {
         try {
             return InfluxDBVersion.valueOf((String) value);
@@ -158,6 +202,70 @@ public class InfluxDBConfiguration {
         return addLabelTag;
     }
 
+    /**
+     * Returns the interval in minutes after which the cached count of stored points per item is refreshed
+     */
+    public int getItemsCountRefreshInterval() {
+        return itemsCountRefreshInterval;
+    }
+
+    /**
+     * Returns the maximum size in megabytes of points buffered on disk while InfluxDB can't be reached, 0 if disabled
+     */
+    public int getDiskBufferMaxSize() {
+        return diskBufferMaxSize;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Returns the connection timeout in seconds
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Returns the read timeout in seconds
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Returns the write timeout in seconds
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Returns the time in seconds an idle connection is kept alive to be reused
+     */
+    public int getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * Returns the interval in seconds between checks of InfluxDB availability
+     */
+    public int getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Returns the maximum time in seconds between reconnection attempts while InfluxDB isn't available
+     */
+    public int getReconnectMaxBackoff() {
+        return reconnectMaxBackoff;
+    }
+
     public String getUser() {
         return user;
     }
@@ -176,7 +284,12 @@ public class InfluxDBConfiguration {
                 + password.length() + " chars" + '\'' + ", token='" + token.length() + " chars" + '\''
                 + ", databaseName='" + databaseName + '\'' + ", retentionPolicy='" + retentionPolicy + '\''
                 + ", version=" + version + ", replaceUnderscore=" + replaceUnderscore + ", addCategoryTag="
-                + addCategoryTag + ", addTypeTag=" + addTypeTag + ", addLabelTag=" + addLabelTag + '}';
+                + addCategoryTag + ", addTypeTag=" + addTypeTag + ", addLabelTag=" + addLabelTag
+                + ", itemsCountRefreshInterval=" + itemsCountRefreshInterval + ", diskBufferMaxSize="
+                + diskBufferMaxSize + ", gzip=" + gzip + ", connectTimeout=" + connectTimeout + ", readTimeout="
+                + readTimeout + ", writeTimeout=" + writeTimeout + ", maxIdleConnections=" + maxIdleConnections
+                + ", keepAliveDuration=" + keepAliveDuration + ", healthCheckInterval=" + healthCheckInterval
+                + ", reconnectMaxBackoff=" + reconnectMaxBackoff + '}';
         return sb;
     }
 
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks periodically in background if InfluxDB is available, reconnecting with exponential backoff when it isn't.
+ *
+ * It works as a circuit breaker: while the circuit is {@link State#CLOSED} points are written to InfluxDB, when a
+ * check fails the circuit is {@link State#OPEN} and points must not be sent to InfluxDB, and while a reconnection is
+ * tried it's {@link State#HALF_OPEN}. As checks run in the scheduler, storing points never waits for InfluxDB.
+ *
+ * Only one check runs at a time and at most one is scheduled: a check requested while another one is running is
+ * executed right after it, instead of starting a second chain of checks.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxDBConnectionMonitor {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(InfluxDBConnectionMonitor.class);
+
+    private final InfluxDBRepository repository;
+    private final ScheduledExecutorService scheduler;
+    private final long checkIntervalMillis;
+    private final long maxBackoffMillis;
+    private final Runnable onRecovered;
+
+    private volatile State state = State.CLOSED;
+    private long backoffMillis;
+
+    private @Nullable ScheduledFuture<?> checkJob;
+    private boolean running;
+    private boolean checkRunning;
+    private boolean checkRequested;
+
+    /**
+     * @param repository Repository to check
+     * @param scheduler Scheduler where checks are executed
+     * @param checkIntervalMillis Interval between checks while InfluxDB is available
+     * @param maxBackoffMillis Maximum interval between reconnection attempts
+     * @param onRecovered Action executed each time InfluxDB is available again
+     */
+    public InfluxDBConnectionMonitor(InfluxDBRepository repository, ScheduledExecutorService scheduler,
+            long checkIntervalMillis, long maxBackoffMillis, Runnable onRecovered) {
+        this.repository = repository;
+        this.scheduler = scheduler;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.maxBackoffMillis = Math.max(checkIntervalMillis, maxBackoffMillis);
+        this.onRecovered = onRecovered;
+    }
+
+    /**
+     * Starts checking the connection, first check is done immediately
+     */
+    public synchronized void start() {
+        running = true;
+        scheduleCheck(0);
+    }
+
+    /**
+     * Stops checking the connection
+     */
+    public synchronized void stop() {
+        running = false;
+        final ScheduledFuture<?> currentCheckJob = checkJob;
+        if (currentCheckJob != null) {
+            currentCheckJob.cancel(false);
+            checkJob = null;
+        }
+    }
+
+    /**
+     * Returns if points can be written to InfluxDB
+     */
+    public boolean isAvailable() {
+        return state == State.CLOSED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Notifies an error writing to InfluxDB, opening the circuit until the next successful reconnection
+     */
+    public void writeFailed() {
+        if (state == State.CLOSED) {
+            logger.warn("Error writing to InfluxDB, points won't be written until connection is recovered");
+            changeState(State.OPEN);
+            synchronized (this) {
+                backoffMillis = 0;
+                if (checkRunning) {
+                    checkRequested = true;
+                } else {
+                    scheduleCheck(0);
+                }
+            }
+        }
+    }
+
+    // Visible for testing
+    void check() {
+        synchronized (this) {
+            if (checkRunning) {
+                checkRequested = true;
+                return;
+            }
+            checkRunning = true;
+            checkRequested = false;
+        }
+        long nextCheckDelay = checkIntervalMillis;
+        try {
+            nextCheckDelay = doCheck();
+        } finally {
+            synchronized (this) {
+                checkRunning = false;
+                scheduleCheck(checkRequested ? 0 : nextCheckDelay);
+                checkRequested = false;
+            }
+        }
+    }
+
+    /**
+     * Checks the connection, reconnecting if it's not available
+     *
+     * @return Delay in milliseconds until the next check
+     */
+    private long doCheck() {
+        if (state == State.CLOSED) {
+            if (isUp()) {
+                return checkIntervalMillis;
+            }
+            logger.warn("InfluxDB isn't available, points won't be written until connection is recovered");
+            changeState(State.OPEN);
+            synchronized (this) {
+                backoffMillis = 0;
+            }
+        }
+        return reconnect();
+    }
+
+    private long reconnect() {
+        changeState(State.HALF_OPEN);
+        boolean connected;
+        try {
+            repository.disconnect();
+            connected = repository.connect();
+        } catch (RuntimeException e) {
+            logger.debug("Error reconnecting to InfluxDB: {}", e.getMessage());
+            connected = false;
+        }
+        if (connected) {
+            changeState(State.CLOSED);
+            logger.info("Connection to InfluxDB recovered");
+            try {
+                onRecovered.run();
+            } catch (RuntimeException e) {
+                logger.warn("Error executing InfluxDB recovery actions: {}", e.getMessage());
+            }
+            return checkIntervalMillis;
+        } else {
+            changeState(State.OPEN);
+            long delay;
+            synchronized (this) {
+                backoffMillis = backoffMillis == 0 ? Math.min(1000, maxBackoffMillis)
+                        : Math.min(backoffMillis * 2, maxBackoffMillis);
+                delay = backoffMillis;
+            }
+            logger.debug("InfluxDB still not available, next reconnection in {} ms", delay);
+            return delay;
+        }
+    }
+
+    private boolean isUp() {
+        try {
+            return repository.isConnected() && repository.checkConnectionStatus();
+        } catch (RuntimeException e) {
+            logger.debug("Error checking InfluxDB connection: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void changeState(State newState) {
+        if (state != newState) {
+            logger.debug("InfluxDB connection state changed from {} to {}", state, newState);
+            state = newState;
+        }
+    }
+
+    // Must be called holding the lock, replaces the scheduled check if there is one
+    private void scheduleCheck(long delayMillis) {
+        final ScheduledFuture<?> currentCheckJob = checkJob;
+        if (currentCheckJob != null) {
+            currentCheckJob.cancel(false);
+            checkJob = null;
+        }
+        if (running) {
+            checkJob = scheduler.schedule(this::check, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
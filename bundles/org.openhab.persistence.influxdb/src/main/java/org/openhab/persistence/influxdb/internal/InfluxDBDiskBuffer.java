@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent buffer of points in line protocol format used while InfluxDB can't be reached.
+ *
+ * Points are appended to segment files which are rotated when they reach the maximum segment size. When the total
+ * size exceeds the configured maximum, oldest segments are discarded. Segments are replayed in order and deleted once
+ * all their points have been written, so points survive openHAB restarts. As points are identified by their
+ * measurement, tags and time, writing a segment twice after a failure doesn't create duplicated points.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxDBDiskBuffer {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".lp";
+    private static final long MAX_SEGMENT_SIZE = 10L * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(InfluxDBDiskBuffer.class);
+
+    private final Path directory;
+    private final long maxSize;
+    private final long maxSegmentSize;
+
+    // Closed segments by sequence number, the current segment isn't included
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private long closedSegmentsSize;
+
+    private @Nullable BufferedWriter currentWriter;
+    private long currentSequence;
+    private long currentSize;
+    private final Object replayLock = new Object();
+
+    /**
+     * Creates a buffer that stores its segments in the given directory, existing segments are kept
+     *
+     * @param directory Directory of segment files
+     * @param maxSize Maximum size in bytes of all segment files
+     * @throws IOException If directory can't be created or read
+     */
+    public InfluxDBDiskBuffer(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxSegmentSize = Math.max(1024, Math.min(MAX_SEGMENT_SIZE, maxSize / 10));
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                Long sequence = parseSequence(segment);
+                if (sequence != null) {
+                    segments.put(sequence, segment);
+                    closedSegmentsSize += Files.size(segment);
+                }
+            }
+        }
+        currentSequence = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        if (!segments.isEmpty()) {
+            logger.info("Found {} bytes of buffered points pending to be written to InfluxDB", closedSegmentsSize);
+        }
+    }
+
+    /**
+     * Appends a point to the buffer
+     *
+     * @param lineProtocol Point in line protocol format
+     */
+    public synchronized void append(String lineProtocol) {
+        try {
+            BufferedWriter writer = currentWriter;
+            if (writer == null) {
+                Path segment = segmentPath(currentSequence);
+                writer = Files.newBufferedWriter(segment, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                currentWriter = writer;
+                currentSize = 0;
+            }
+            writer.write(lineProtocol);
+            writer.write('\n');
+            writer.flush();
+            currentSize += lineProtocol.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (currentSize >= maxSegmentSize) {
+                closeCurrentSegment();
+            }
+        } catch (IOException e) {
+            logger.warn("Point couldn't be buffered on disk, it will be lost: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns if there aren't points pending to be written
+     */
+    public synchronized boolean isEmpty() {
+        return segments.isEmpty() && currentSize == 0;
+    }
+
+    /**
+     * Returns the size in bytes of points pending to be written
+     */
+    public synchronized long getSize() {
+        return closedSegmentsSize + currentSize;
+    }
+
+    /**
+     * Writes all buffered points in batches, stopping at the first batch that can't be written
+     *
+     * @param batchWriter Writes a batch of points in line protocol format, returning false if it failed
+     * @param batchSize Maximum number of points per batch
+     * @return True if all points were written, otherwise false
+     */
+    public boolean replay(Predicate<List<String>> batchWriter, int batchSize) {
+        synchronized (replayLock) {
+            Path segment;
+            while ((segment = nextSegmentToReplay()) != null) {
+                if (!replaySegment(segment, batchWriter, batchSize)) {
+                    return false;
+                }
+                removeSegment(segment);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Closes the current segment, pending points are kept on disk
+     */
+    public synchronized void close() {
+        try {
+            closeCurrentSegment();
+        } catch (IOException e) {
+            logger.warn("Error closing buffer segment: {}", e.getMessage());
+        }
+    }
+
+    private synchronized @Nullable Path nextSegmentToReplay() {
+        if (segments.isEmpty() && currentSize > 0) {
+            try {
+                closeCurrentSegment();
+            } catch (IOException e) {
+                logger.warn("Error closing buffer segment: {}", e.getMessage());
+            }
+        }
+        return segments.isEmpty() ? null : segments.firstEntry().getValue();
+    }
+
+    private boolean replaySegment(Path segment, Predicate<List<String>> batchWriter, int batchSize) {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    batch.add(line);
+                }
+                if (batch.size() >= batchSize) {
+                    if (!batchWriter.test(batch)) {
+                        return false;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            return batch.isEmpty() || batchWriter.test(batch);
+        } catch (IOException e) {
+            logger.warn("Buffered points in {} couldn't be read, they will be discarded: {}", segment,
+                    e.getMessage());
+            return true;
+        }
+    }
+
+    private synchronized void removeSegment(Path segment) {
+        Long sequence = parseSequence(segment);
+        if (sequence != null && segments.remove(sequence) != null) {
+            try {
+                closedSegmentsSize -= Files.size(segment);
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                logger.warn("Buffer segment {} couldn't be deleted: {}", segment, e.getMessage());
+            }
+        }
+    }
+
+    private void closeCurrentSegment() throws IOException {
+        final BufferedWriter writer = currentWriter;
+        if (writer != null) {
+            writer.close();
+            currentWriter = null;
+            segments.put(currentSequence, segmentPath(currentSequence));
+            closedSegmentsSize += currentSize;
+            currentSequence++;
+            currentSize = 0;
+            discardOldestSegments();
+        }
+    }
+
+    private void discardOldestSegments() throws IOException {
+        while (closedSegmentsSize > maxSize && !segments.isEmpty()) {
+            Path oldest = segments.pollFirstEntry().getValue();
+            long size = Files.size(oldest);
+            Files.deleteIfExists(oldest);
+            closedSegmentsSize -= size;
+            logger.warn("InfluxDB disk buffer is full, discarded {} bytes of oldest points", size);
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private static @Nullable Long parseSequence(Path segment) {
+        String fileName = segment.getFileName().toString();
+        try {
+            return Long.parseLong(
+                    fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+}
@@ -14,6 +14,7 @@ package org.openhab.persistence.influxdb.internal;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 
@@ -51,9 +52,9 @@ public interface InfluxDBRepository {
     boolean checkConnectionStatus();
 
     /**
-     * Return all stored item names with it's count of stored points
+     * Return all stored measurement names with it's count of stored points
      *
-     * @return Map with <ItemName,ItemCount> entries
+     * @return Map with <MeasurementName,Count> entries
      */
     Map<String, Integer> getStoredItemsCount();
 
@@ -65,10 +66,34 @@ public interface InfluxDBRepository {
      */
     List<InfluxRow> query(String query);
 
+    /**
+     * Executes query streaming its results, rows are received while the consumer iterates them
+     *
+     * @param query Query
+     * @return Query results, must be closed if they aren't fully consumed
+     */
+    InfluxRowStream queryStream(String query);
+
     /**
      * Write point to database
      *
      * @param influxPoint Point to write
      */
     void write(InfluxPoint influxPoint);
+
+    /**
+     * Sets the listener notified when points written by {@link #write(InfluxPoint)} can't be written, as the clients
+     * write them asynchronously and errors aren't thrown to the caller
+     *
+     * @param writeErrorListener Listener receiving the write error
+     */
+    void setWriteErrorListener(Consumer<Throwable> writeErrorListener);
+
+    /**
+     * Write points in line protocol format with milliseconds precision, waiting until they are written
+     *
+     * @param lineProtocolRecords Points to write
+     * @return True if points were written, otherwise false
+     */
+    boolean writeRecords(List<String> lineProtocolRecords);
 }
@@ -13,9 +13,12 @@
 package org.openhab.persistence.influxdb.internal;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.TimeZone;
+import java.util.function.Function;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -112,38 +115,73 @@ public class InfluxDBStateConvertUtils {
     }
 
     public static State objectToState(Object value, Item itemToSetState) {
-        String valueStr = String.valueOf(value);
+        return createStateConverter(itemToSetState).apply(value);
+    }
 
+    /**
+     * Creates a converter from values to {@link State}s suitable for the given {@link Item}. The item type is
+     * resolved only once, so the converter can be applied to all values returned by a query. Numeric values are
+     * converted directly without parsing its {@link String} representation.
+     *
+     * @param itemToSetState {@link Item} to get the {@link State}s for
+     * @return Converter from values to {@link State}s
+     */
+    public static Function<Object, State> createStateConverter(Item itemToSetState) {
         Item item = itemToSetState;
         if (item instanceof GroupItem) {
-            item = ((GroupItem) item).getBaseItem();
+            Item baseItem = ((GroupItem) item).getBaseItem();
+            if (baseItem != null) {
+                item = baseItem;
+            }
         }
         if (item instanceof ColorItem) {
-            return new HSBType(valueStr);
+            return value -> new HSBType(String.valueOf(value));
         } else if (item instanceof LocationItem) {
-            return new PointType(valueStr);
+            return value -> new PointType(String.valueOf(value));
         } else if (item instanceof NumberItem) {
-            return new DecimalType(valueStr);
-        } else if (item instanceof DimmerItem) {
-            return new PercentType(valueStr);
+            return value -> new DecimalType(toBigDecimal(value));
+        } else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
+            return value -> new PercentType(toBigDecimal(value));
         } else if (item instanceof SwitchItem) {
-            return toBoolean(valueStr) ? OnOffType.ON : OnOffType.OFF;
+            return value -> toBoolean(value) ? OnOffType.ON : OnOffType.OFF;
         } else if (item instanceof ContactItem) {
-            return toBoolean(valueStr) ? OpenClosedType.OPEN : OpenClosedType.CLOSED;
-        } else if (item instanceof RollershutterItem) {
-            return new PercentType(valueStr);
+            return value -> toBoolean(value) ? OpenClosedType.OPEN : OpenClosedType.CLOSED;
         } else if (item instanceof DateTimeItem) {
-            Instant i = Instant.ofEpochMilli(new BigDecimal(valueStr).longValue());
-            ZonedDateTime z = ZonedDateTime.ofInstant(i, TimeZone.getDefault().toZoneId());
-            return new DateTimeType(z);
+            ZoneId zoneId = TimeZone.getDefault().toZoneId();
+            return value -> new DateTimeType(ZonedDateTime.ofInstant(Instant.ofEpochMilli(toLong(value)), zoneId));
+        } else {
+            return value -> new StringType(String.valueOf(value));
+        }
+    }
+
+    private static BigDecimal toBigDecimal(@Nullable Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            return BigDecimal.valueOf((Double) value);
+        } else {
+            return new BigDecimal(String.valueOf(value));
+        }
+    }
+
+    private static long toLong(@Nullable Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
         } else {
-            return new StringType(valueStr);
+            return toBigDecimal(value).longValue();
         }
     }
 
     private static boolean toBoolean(@Nullable Object object) {
         if (object instanceof Boolean) {
             return (Boolean) object;
+        } else if (object instanceof Number) {
+            return ((Number) object).doubleValue() == 1;
         } else if (object != null) {
             if ("1".equals(object)) {
                 return true;
@@ -12,10 +12,14 @@
  */
 package org.openhab.persistence.influxdb.internal;
 
+import static org.openhab.persistence.influxdb.internal.InfluxDBConstants.FIELD_VALUE_NAME;
+
+import java.math.BigInteger;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.eclipse.jdt.annotation.DefaultLocation;
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -59,6 +63,65 @@ public class InfluxPoint {
         return Collections.unmodifiableMap(tags);
     }
 
+    /**
+     * Returns the point in InfluxDB line protocol format, with time in milliseconds precision
+     *
+     * Line protocol can't escape line breaks, so they are replaced by spaces and the point is always a single line.
+     *
+     * @return Line protocol representation of the point
+     */
+    public String toLineProtocol() {
+        StringBuilder sb = new StringBuilder();
+        escape(measurementName, sb, false);
+        // Sorted tags are recommended by InfluxDB for better performance
+        new TreeMap<>(tags).forEach((tagName, tagValue) -> {
+            sb.append(',');
+            escape(tagName, sb, true);
+            sb.append('=');
+            escape(tagValue, sb, true);
+        });
+        sb.append(' ').append(FIELD_VALUE_NAME).append('=');
+        appendValue(sb);
+        sb.append(' ').append(time.toEpochMilli());
+        return sb.toString();
+    }
+
+    private void appendValue(StringBuilder sb) {
+        Object currentValue = value;
+        if (currentValue instanceof Long || currentValue instanceof Integer || currentValue instanceof Short
+                || currentValue instanceof Byte || currentValue instanceof BigInteger) {
+            sb.append(currentValue).append('i');
+        } else if (currentValue instanceof Number || currentValue instanceof Boolean) {
+            sb.append(currentValue);
+        } else {
+            sb.append('"');
+            String stringValue = String.valueOf(currentValue);
+            for (int i = 0; i < stringValue.length(); i++) {
+                char c = stringValue.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                } else if (c == '\n' || c == '\r') {
+                    c = ' ';
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+    }
+
+    private static void escape(String text, StringBuilder sb, boolean escapeEquals) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                c = ' ';
+            }
+            if (c == ' ' || c == ',' || (escapeEquals && c == '=')) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+    }
+
     public static final class Builder {
         private String measurementName;
         private Instant time;
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Results of a query, converted while they are received from the server.
+ *
+ * The query is executed by each call to {@link #iterator()}, so the results can be iterated several times, each time
+ * with their current content. The query of an iteration is cancelled when all results have been read or reading them
+ * fails. Callers that stop iterating early should close the result, which cancels the queries of all its iterations,
+ * otherwise the query is only cancelled once its results haven't been read for
+ * {@link InfluxRowStream#DEFAULT_CONSUMER_TIMEOUT_MILLIS}.
+ *
+ * @param <T> Type of the converted results
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxQueryResult<T> implements Iterable<T>, AutoCloseable {
+    private final Supplier<InfluxRowStream> query;
+    private final Supplier<Function<InfluxRow, T>> converterFactory;
+
+    private final List<InfluxRowStream> openRows = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param query Executes the query and returns its rows
+     * @param converterFactory Creates the converter of the rows of an iteration
+     */
+    public InfluxQueryResult(Supplier<InfluxRowStream> query, Supplier<Function<InfluxRow, T>> converterFactory) {
+        this.query = query;
+        this.converterFactory = converterFactory;
+    }
+
+    @Override
+    public synchronized Iterator<T> iterator() {
+        if (closed) {
+            return Collections.emptyIterator();
+        }
+        openRows.removeIf(InfluxRowStream::isClosed);
+        final InfluxRowStream currentRows = query.get();
+        openRows.add(currentRows);
+        final Function<InfluxRow, T> converter = converterFactory.get();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (currentRows.hasNext()) {
+                        return true;
+                    }
+                } catch (RuntimeException e) {
+                    currentRows.close();
+                    throw e;
+                }
+                currentRows.close();
+                return false;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return converter.apply(currentRows.next());
+            }
+        };
+    }
+
+    /**
+     * Stops reading the results, cancelling the queries which are still running
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        openRows.forEach(InfluxRowStream::close);
+        openRows.clear();
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded bridge between the asynchronous callbacks of the InfluxDB clients and a consumer iterating the query
+ * results.
+ *
+ * The client thread produces rows with {@link #offer(InfluxRow)} and finishes with {@link #complete()} or
+ * {@link #fail(Throwable)}. When the consumer doesn't keep up (or stops iterating) for longer than the consumer timeout
+ * or calls {@link #close()}, the cancel action is executed so the server stops sending results. The consumer timeout is
+ * short, so a consumer which stops iterating without closing the stream doesn't keep the query running for long. When
+ * the server doesn't send results for longer than the server timeout, the query is cancelled and the consumer gets an
+ * error instead of truncated results.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxRowStream implements Iterator<InfluxRow>, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+    public static final long DEFAULT_CONSUMER_TIMEOUT_MILLIS = 10_000;
+
+    private static final Object END_OF_STREAM = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(InfluxRowStream.class);
+    private final BlockingQueue<Object> queue;
+    private final long timeoutMillis;
+    private final long consumerTimeoutMillis;
+
+    private volatile boolean closed;
+    private volatile @Nullable Runnable cancelAction;
+
+    private @Nullable InfluxRow nextRow;
+    private boolean finished;
+
+    public InfluxRowStream() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT_MILLIS, DEFAULT_CONSUMER_TIMEOUT_MILLIS);
+    }
+
+    public InfluxRowStream(int capacity, long timeoutMillis) {
+        this(capacity, timeoutMillis, timeoutMillis);
+    }
+
+    /**
+     * @param capacity Maximum number of rows received but not consumed yet
+     * @param timeoutMillis Time the consumer waits for results from the server
+     * @param consumerTimeoutMillis Time the server waits for the consumer when the stream is full
+     */
+    public InfluxRowStream(int capacity, long timeoutMillis, long consumerTimeoutMillis) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.timeoutMillis = timeoutMillis;
+        this.consumerTimeoutMillis = consumerTimeoutMillis;
+    }
+
+    /**
+     * Returns an already finished stream without any row
+     */
+    public static InfluxRowStream empty() {
+        InfluxRowStream stream = new InfluxRowStream(1, DEFAULT_TIMEOUT_MILLIS);
+        stream.complete();
+        return stream;
+    }
+
+    /**
+     * Sets the action executed to stop the underlying query, executed immediately if the stream is already closed
+     *
+     * @param cancelAction Action which cancels the query
+     */
+    public void setCancelAction(Runnable cancelAction) {
+        this.cancelAction = cancelAction;
+        if (closed) {
+            cancel();
+        }
+    }
+
+    /**
+     * Adds a row to the stream, waiting for the consumer if the stream is full
+     *
+     * @param row Row to add
+     * @return True if the row was added, false if the consumer is gone and production must stop
+     */
+    public boolean offer(InfluxRow row) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (queue.offer(row, consumerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return !closed;
+            } else {
+                logger.debug("Query results not consumed in {} ms, cancelling query", consumerTimeoutMillis);
+                close();
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Marks the end of results
+     */
+    public void complete() {
+        putTerminal(END_OF_STREAM);
+    }
+
+    /**
+     * Marks the end of results due to an error that will be rethrown to the consumer
+     *
+     * @param error Error that stopped the query
+     */
+    public void fail(Throwable error) {
+        putTerminal(error);
+    }
+
+    private void putTerminal(Object terminal) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!queue.offer(terminal, consumerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.debug("Query results not consumed in {} ms, discarding them", consumerTimeoutMillis);
+                close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRow != null) {
+            return true;
+        }
+        if (finished || closed) {
+            return false;
+        }
+        Object element;
+        try {
+            element = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            return false;
+        }
+        if (element instanceof InfluxRow) {
+            nextRow = (InfluxRow) element;
+            return true;
+        }
+        finished = true;
+        if (element == null) {
+            close();
+            throw new UnnexpectedConditionException(
+                    String.format("No query results received in %d ms, query cancelled", timeoutMillis));
+        } else if (element instanceof Throwable) {
+            close();
+            throw new UnnexpectedConditionException("Error executing query", (Throwable) element);
+        }
+        return false;
+    }
+
+    @Override
+    public InfluxRow next() {
+        InfluxRow row = hasNext() ? nextRow : null;
+        if (row == null) {
+            throw new NoSuchElementException();
+        }
+        nextRow = null;
+        return row;
+    }
+
+    /**
+     * Stops consuming results, cancelling the query if it's still running
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            queue.clear();
+            cancel();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void cancel() {
+        final Runnable currentCancelAction = cancelAction;
+        if (currentCancelAction != null) {
+            cancelAction = null;
+            currentCancelAction.run();
+        }
+    }
+}
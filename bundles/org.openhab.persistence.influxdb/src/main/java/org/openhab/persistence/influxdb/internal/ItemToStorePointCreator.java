@@ -15,7 +15,11 @@ package org.openhab.persistence.influxdb.internal;
 import static org.openhab.persistence.influxdb.internal.InfluxDBConstants.*;
 
 import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -30,12 +34,19 @@ import org.openhab.persistence.influxdb.InfluxDBPersistenceService;
 /**
  * Logic to create an InfluxDB {@link InfluxPoint} from an openHAB {@link Item}
  *
+ * Everything that only depends on the item definition (measurement name, desired type conversion and tags) is
+ * resolved once per item and cached, so storing a value doesn't need any registry lookup. The cache must be
+ * invalidated through {@link #invalidate(String)} when the item or its metadata change.
+ *
  * @author Joan Pujol Espinar - Initial contribution
  */
 @NonNullByDefault
 public class ItemToStorePointCreator {
+    private static final String NOT_AVAILABLE = "n/a";
+
     private final InfluxDBConfiguration configuration;
     private final @Nullable MetadataRegistry metadataRegistry;
+    private final Map<String, ItemStoreInfo> itemStoreInfoCache = new ConcurrentHashMap<>();
 
     public ItemToStorePointCreator(InfluxDBConfiguration configuration, @Nullable MetadataRegistry metadataRegistry) {
         this.configuration = configuration;
@@ -47,33 +58,49 @@ public class ItemToStorePointCreator {
             return null;
         }
 
-        String measurementName = calculateMeasurementName(item, storeAlias);
-        String itemName = item.getName();
-        State state = getItemState(item);
+        ItemStoreInfo storeInfo = itemStoreInfoCache.computeIfAbsent(item.getName(),
+                itemName -> createItemStoreInfo(item));
+
+        String measurementName = storeAlias != null && !storeAlias.isBlank() ? calculateMeasurementName(storeAlias)
+                : storeInfo.measurementName;
+        State state = getItemState(item, storeInfo.desiredConversion);
 
         Object value = InfluxDBStateConvertUtils.stateToObject(state);
 
         InfluxPoint.Builder point = InfluxPoint.newBuilder(measurementName).withTime(Instant.now()).withValue(value)
-                .withTag(TAG_ITEM_NAME, itemName);
+                .withTag(TAG_ITEM_NAME, item.getName());
 
-        addPointTags(item, point);
+        addPointTags(storeInfo, point);
 
         return point.build();
     }
 
-    private String calculateMeasurementName(Item item, @Nullable String storeAlias) {
-        String name = storeAlias != null && !storeAlias.isBlank() ? storeAlias : item.getName();
+    /**
+     * Discards the cached information of an item, it will be resolved again on next store
+     *
+     * @param itemName Name of the item whose definition or metadata changed
+     */
+    public void invalidate(String itemName) {
+        itemStoreInfoCache.remove(itemName);
+    }
+
+    private ItemStoreInfo createItemStoreInfo(Item item) {
+        String categoryName = item.getCategory();
+        String labelName = item.getLabel();
+        return new ItemStoreInfo(calculateMeasurementName(item.getName()),
+                calculateDesiredTypeConversionToStore(item), categoryName != null ? categoryName : NOT_AVAILABLE,
+                item.getType(), labelName != null ? labelName : NOT_AVAILABLE, getMetadataTags(item));
+    }
 
+    private String calculateMeasurementName(String name) {
         if (configuration.isReplaceUnderscore()) {
-            name = name.replace('_', '.');
+            return name.replace('_', '.');
         }
-
         return name;
     }
 
-    private State getItemState(Item item) {
+    private State getItemState(Item item, Optional<Class<? extends State>> desiredConversion) {
         final State state;
-        final Optional<Class<? extends State>> desiredConversion = calculateDesiredTypeConversionToStore(item);
         if (desiredConversion.isPresent()) {
             State convertedState = item.getStateAs(desiredConversion.get());
             if (convertedState != null) {
@@ -92,36 +119,57 @@ public class ItemToStorePointCreator {
                 .findFirst().map(commandType -> commandType.asSubclass(State.class));
     }
 
-    private void addPointTags(Item item, InfluxPoint.Builder point) {
-        if (configuration.isAddCategoryTag()) {
-            String categoryName = item.getCategory();
-            if (categoryName == null) {
-                categoryName = "n/a";
+    private Map<String, String> getMetadataTags(Item item) {
+        final MetadataRegistry currentMetadataRegistry = metadataRegistry;
+        if (currentMetadataRegistry != null) {
+            MetadataKey key = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, item.getName());
+            Metadata metadata = currentMetadataRegistry.get(key);
+            if (metadata != null) {
+                Map<String, String> tags = new HashMap<>();
+                metadata.getConfiguration().forEach((tagName, tagValue) -> {
+                    tags.put(tagName, tagValue.toString());
+                });
+                return tags;
             }
-            point.withTag(TAG_CATEGORY_NAME, categoryName);
+        }
+        return Collections.emptyMap();
+    }
+
+    private void addPointTags(ItemStoreInfo storeInfo, InfluxPoint.Builder point) {
+        if (configuration.isAddCategoryTag()) {
+            point.withTag(TAG_CATEGORY_NAME, storeInfo.categoryName);
         }
 
         if (configuration.isAddTypeTag()) {
-            point.withTag(TAG_TYPE_NAME, item.getType());
+            point.withTag(TAG_TYPE_NAME, storeInfo.typeName);
         }
 
         if (configuration.isAddLabelTag()) {
-            String labelName = item.getLabel();
-            if (labelName == null) {
-                labelName = "n/a";
-            }
-            point.withTag(TAG_LABEL_NAME, labelName);
+            point.withTag(TAG_LABEL_NAME, storeInfo.labelName);
         }
 
-        final MetadataRegistry currentMetadataRegistry = metadataRegistry;
-        if (currentMetadataRegistry != null) {
-            MetadataKey key = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, item.getName());
-            Metadata metadata = currentMetadataRegistry.get(key);
-            if (metadata != null) {
-                metadata.getConfiguration().forEach((tagName, tagValue) -> {
-                    point.withTag(tagName, tagValue.toString());
-                });
-            }
+        storeInfo.metadataTags.forEach(point::withTag);
+    }
+
+    /**
+     * Item definition derived values needed to create a point
+     */
+    private static class ItemStoreInfo {
+        final String measurementName;
+        final Optional<Class<? extends State>> desiredConversion;
+        final String categoryName;
+        final String typeName;
+        final String labelName;
+        final Map<String, String> metadataTags;
+
+        ItemStoreInfo(String measurementName, Optional<Class<? extends State>> desiredConversion,
+                String categoryName, String typeName, String labelName, Map<String, String> metadataTags) {
+            this.measurementName = measurementName;
+            this.desiredConversion = desiredConversion;
+            this.categoryName = categoryName;
+            this.typeName = typeName;
+            this.labelName = labelName;
+            this.metadataTags = metadataTags;
         }
     }
 }
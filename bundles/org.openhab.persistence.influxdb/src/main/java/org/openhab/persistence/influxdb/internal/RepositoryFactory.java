@@ -12,12 +12,17 @@
  */
 package org.openhab.persistence.influxdb.internal;
 
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.openhab.persistence.influxdb.internal.influx1.Influx1FilterCriteriaQueryCreatorImpl;
 import org.openhab.persistence.influxdb.internal.influx1.InfluxDB1RepositoryImpl;
 import org.openhab.persistence.influxdb.internal.influx2.Influx2FilterCriteriaQueryCreatorImpl;
 import org.openhab.persistence.influxdb.internal.influx2.InfluxDB2RepositoryImpl;
 
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
 /**
  * Factory that returns {@link InfluxDBRepository} and {@link FilterCriteriaQueryCreator} implementations
  * depending on InfluxDB version
@@ -38,6 +43,19 @@ public class RepositoryFactory {
         }
     }
 
+    /**
+     * Creates the HTTP client configuration shared by both InfluxDB clients, with configured timeouts and connection
+     * pool
+     */
+    public static OkHttpClient.Builder createHttpClientBuilder(InfluxDBConfiguration influxDBConfiguration) {
+        return new OkHttpClient.Builder()
+                .connectTimeout(influxDBConfiguration.getConnectTimeout(), TimeUnit.SECONDS)
+                .readTimeout(influxDBConfiguration.getReadTimeout(), TimeUnit.SECONDS)
+                .writeTimeout(influxDBConfiguration.getWriteTimeout(), TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(influxDBConfiguration.getMaxIdleConnections(),
+                        influxDBConfiguration.getKeepAliveDuration(), TimeUnit.SECONDS));
+    }
+
     public static FilterCriteriaQueryCreator createQueryCreator(InfluxDBConfiguration influxDBConfiguration) {
         switch (influxDBConfiguration.getVersion()) {
             case V1:
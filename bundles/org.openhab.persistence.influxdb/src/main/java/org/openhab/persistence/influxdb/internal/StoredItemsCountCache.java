@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the count of stored points per measurement, as returned by {@link InfluxDBRepository#getStoredItemsCount()}, so
+ * it can be returned immediately.
+ *
+ * Counting points on server side is expensive, so counts are refreshed in background every refresh interval and
+ * incremented locally for each written point between refreshes. A refresh replaces the local counts with the server
+ * counts: it isn't known which of the points written while the server counts them are included, so they're left to
+ * the next refresh rather than risking to count them twice.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class StoredItemsCountCache {
+    private final Logger logger = LoggerFactory.getLogger(StoredItemsCountCache.class);
+
+    private final InfluxDBRepository repository;
+    private final ScheduledExecutorService scheduler;
+    private final long refreshIntervalMillis;
+
+    private final Object lock = new Object();
+    private Map<String, Integer> counts = new HashMap<>();
+    private volatile long lastRefreshMillis;
+    private volatile boolean loaded;
+
+    private @Nullable ScheduledFuture<?> refreshJob;
+
+    public StoredItemsCountCache(InfluxDBRepository repository, ScheduledExecutorService scheduler,
+            long refreshIntervalMillis) {
+        this.repository = repository;
+        this.scheduler = scheduler;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    /**
+     * Starts refreshing counts in background, first refresh is done immediately
+     */
+    public synchronized void start() {
+        stop();
+        refreshJob = scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops refreshing counts in background
+     */
+    public synchronized void stop() {
+        final ScheduledFuture<?> currentRefreshJob = refreshJob;
+        if (currentRefreshJob != null) {
+            currentRefreshJob.cancel(false);
+            refreshJob = null;
+        }
+    }
+
+    /**
+     * Returns if counts have been loaded from server at least once
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the last known count of stored points per measurement, without querying the server
+     *
+     * @return Map with <MeasurementName,Count> entries
+     */
+    public Map<String, Integer> getStoredItemsCount() {
+        synchronized (lock) {
+            return Collections.unmodifiableMap(new HashMap<>(counts));
+        }
+    }
+
+    /**
+     * Accounts a point written locally
+     *
+     * @param measurementName Name of the measurement the point has been written to
+     */
+    public void pointWritten(String measurementName) {
+        synchronized (lock) {
+            counts.merge(measurementName, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Reloads counts from server
+     */
+    public void refresh() {
+        if (!repository.isConnected()) {
+            logger.debug("Items count refresh skipped, InfluxDB is not connected");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, Integer> serverCounts = new HashMap<>(repository.getStoredItemsCount());
+            synchronized (lock) {
+                counts = serverCounts;
+            }
+            lastRefreshMillis = System.currentTimeMillis();
+            loaded = true;
+            logger.debug("Refreshed count of stored points of {} measurements in {} ms", serverCounts.size(),
+                    lastRefreshMillis - start);
+        } catch (RuntimeException e) {
+            logger.warn("Error refreshing count of stored points: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds of the last successful refresh, or 0 if it has never been loaded
+     */
+    public long getLastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+}
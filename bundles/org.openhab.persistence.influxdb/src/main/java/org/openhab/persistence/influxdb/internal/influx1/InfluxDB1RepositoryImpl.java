@@ -19,12 +19,16 @@ import static org.openhab.persistence.influxdb.internal.InfluxDBConstants.FIELD_
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.influxdb.BatchOptions;
+import org.influxdb.Cancellable;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Point;
@@ -35,6 +39,8 @@ import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
 import org.openhab.persistence.influxdb.internal.InfluxDBRepository;
 import org.openhab.persistence.influxdb.internal.InfluxPoint;
 import org.openhab.persistence.influxdb.internal.InfluxRow;
+import org.openhab.persistence.influxdb.internal.InfluxRowStream;
+import org.openhab.persistence.influxdb.internal.RepositoryFactory;
 import org.openhab.persistence.influxdb.internal.UnnexpectedConditionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,10 +53,18 @@ import org.slf4j.LoggerFactory;
  */
 @NonNullByDefault
 public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
+    private static final int QUERY_CHUNK_SIZE = 1000;
+    // Error reported by the client with the last chunk of a chunked query
+    private static final String CHUNKED_QUERY_DONE = "DONE";
+    // Column of the result of a COUNT() query
+    private static final String COLUMN_COUNT_NAME_V1 = "count";
+
     private final Logger logger = LoggerFactory.getLogger(InfluxDB1RepositoryImpl.class);
     private InfluxDBConfiguration configuration;
     @Nullable
     private InfluxDB client;
+    private Consumer<Throwable> writeErrorListener = e -> {
+    };
 
     public InfluxDB1RepositoryImpl(InfluxDBConfiguration configuration) {
         this.configuration = configuration;
@@ -64,10 +78,17 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
     @Override
     public boolean connect() {
         final InfluxDB createdClient = InfluxDBFactory.connect(configuration.getUrl(), configuration.getUser(),
-                configuration.getPassword());
+                configuration.getPassword(), RepositoryFactory.createHttpClientBuilder(configuration));
         createdClient.setDatabase(configuration.getDatabaseName());
         createdClient.setRetentionPolicy(configuration.getRetentionPolicy());
-        createdClient.enableBatch(200, 100, TimeUnit.MILLISECONDS);
+        createdClient.enableBatch(BatchOptions.DEFAULTS.actions(200).flushDuration(100)
+                .exceptionHandler((points, throwable) -> {
+                    logger.debug("Error writing points: {}", throwable.getMessage());
+                    writeErrorListener.accept(throwable);
+                }));
+        if (configuration.isGzip()) {
+            createdClient.enableGzip();
+        }
         this.client = createdClient;
         return checkConnectionStatus();
     }
@@ -77,6 +98,11 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
         this.client = null;
     }
 
+    @Override
+    public void setWriteErrorListener(Consumer<Throwable> writeErrorListener) {
+        this.writeErrorListener = writeErrorListener;
+    }
+
     @Override
     public boolean checkConnectionStatus() {
         boolean dbStatus = false;
@@ -120,6 +146,24 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
         }
     }
 
+    @Override
+    public boolean writeRecords(List<String> lineProtocolRecords) {
+        final InfluxDB currentClient = this.client;
+        if (currentClient != null) {
+            try {
+                currentClient.write(configuration.getDatabaseName(), configuration.getRetentionPolicy(),
+                        InfluxDB.ConsistencyLevel.ONE, TimeUnit.MILLISECONDS, lineProtocolRecords);
+                return true;
+            } catch (RuntimeException e) {
+                logger.warn("Error writing {} points: {}", lineProtocolRecords.size(), e.getMessage());
+                return false;
+            }
+        } else {
+            logger.warn("Write of {} points ignored due to client isn't connected", lineProtocolRecords.size());
+            return false;
+        }
+    }
+
     private Point convertPointToClientFormat(InfluxPoint point) {
         Point.Builder clientPoint = Point.measurement(point.getMeasurementName()).time(point.getTime().toEpochMilli(),
                 TimeUnit.MILLISECONDS);
@@ -155,6 +199,45 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
         }
     }
 
+    @Override
+    public InfluxRowStream queryStream(String query) {
+        final InfluxDB currentClient = client;
+        if (currentClient != null) {
+            InfluxRowStream stream = new InfluxRowStream();
+            Query parsedQuery = new Query(query, configuration.getDatabaseName());
+            try {
+                currentClient.query(parsedQuery, QUERY_CHUNK_SIZE,
+                        (cancellable, chunk) -> processQueryChunk(stream, cancellable, chunk), stream::complete);
+            } catch (RuntimeException e) {
+                stream.fail(e);
+            }
+            return stream;
+        } else {
+            logger.warn("Returning empty result because queryAPI isn't present");
+            return InfluxRowStream.empty();
+        }
+    }
+
+    private void processQueryChunk(InfluxRowStream stream, Cancellable cancellable, QueryResult chunk) {
+        stream.setCancelAction(cancellable::cancel);
+        if (CHUNKED_QUERY_DONE.equals(chunk.getError())) {
+            return;
+        } else if (chunk.getError() != null) {
+            stream.fail(new UnnexpectedConditionException(chunk.getError()));
+            cancellable.cancel();
+            return;
+        }
+        List<QueryResult.Result> results = chunk.getResults();
+        if (results != null) {
+            for (InfluxRow row : convertClientResutToRepository(results)) {
+                if (!stream.offer(row)) {
+                    cancellable.cancel();
+                    return;
+                }
+            }
+        }
+    }
+
     private List<InfluxRow> convertClientResutToRepository(List<QueryResult.Result> results) {
         List<InfluxRow> rows = new ArrayList<>();
         for (QueryResult.Result result : results) {
@@ -190,8 +273,7 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
                                 throw new IllegalStateException("missing column");
                             }
                             for (int i = 0; i < valuess.size(); i++) {
-                                Double rawTime = (Double) valuess.get(i).get(timestampColumn);
-                                Instant time = Instant.ofEpochMilli(rawTime.longValue());
+                                Instant time = parseTime(valuess.get(i).get(timestampColumn));
                                 Object value = valuess.get(i).get(valueColumn);
                                 logger.trace("adding historic item {}: time {} value {}", itemName, time, value);
                                 rows.add(new InfluxRow(time, itemName, value));
@@ -204,8 +286,51 @@ public class InfluxDB1RepositoryImpl implements InfluxDBRepository {
         return rows;
     }
 
+    private Instant parseTime(Object rawTime) {
+        // Chunked queries don't support epoch precision so time is returned as a RFC3339 string
+        if (rawTime instanceof Number) {
+            return Instant.ofEpochMilli(((Number) rawTime).longValue());
+        } else {
+            return Instant.parse(String.valueOf(rawTime));
+        }
+    }
+
+    /**
+     * Return all stored measurement names with it's count of stored points
+     *
+     * @return Map with <MeasurementName,Count> entries
+     */
     @Override
     public Map<String, Integer> getStoredItemsCount() {
-        return Collections.emptyMap();
+        final InfluxDB currentClient = client;
+        if (currentClient != null) {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            Query query = new Query("SELECT COUNT(" + FIELD_VALUE_NAME + ") FROM /.*/",
+                    configuration.getDatabaseName());
+            for (QueryResult.Result queryResult : currentClient.query(query).getResults()) {
+                if (queryResult.getError() != null) {
+                    throw new UnnexpectedConditionException(queryResult.getError());
+                }
+                List<QueryResult.Series> seriess = queryResult.getSeries();
+                if (seriess != null) {
+                    // one series per measurement, with a single row holding the count
+                    for (QueryResult.Series series : seriess) {
+                        List<String> columns = series.getColumns();
+                        List<List<Object>> valuess = series.getValues();
+                        int countColumn = columns != null ? columns.indexOf(COLUMN_COUNT_NAME_V1) : -1;
+                        if (countColumn >= 0 && valuess != null && !valuess.isEmpty()) {
+                            Object count = valuess.get(0).get(countColumn);
+                            if (count instanceof Number) {
+                                result.put(series.getName(), ((Number) count).intValue());
+                            }
+                        }
+                    }
+                }
+            }
+            return result;
+        } else {
+            logger.warn("Returning empty result because client isn't connected");
+            return Collections.emptyMap();
+        }
     }
 }
@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,6 +30,8 @@ import org.openhab.persistence.influxdb.internal.InfluxDBConstants;
 import org.openhab.persistence.influxdb.internal.InfluxDBRepository;
 import org.openhab.persistence.influxdb.internal.InfluxPoint;
 import org.openhab.persistence.influxdb.internal.InfluxRow;
+import org.openhab.persistence.influxdb.internal.InfluxRowStream;
+import org.openhab.persistence.influxdb.internal.RepositoryFactory;
 import org.openhab.persistence.influxdb.internal.UnnexpectedConditionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +44,8 @@ import com.influxdb.client.WriteApi;
 import com.influxdb.client.domain.Ready;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
+import com.influxdb.client.write.events.WriteErrorEvent;
+import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
 
 /**
@@ -58,6 +63,8 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
     private QueryApi queryAPI;
     @Nullable
     private WriteApi writeAPI;
+    private Consumer<Throwable> writeErrorListener = e -> {
+    };
 
     public InfluxDB2RepositoryImpl(InfluxDBConfiguration configuration) {
         this.configuration = configuration;
@@ -81,7 +88,8 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
     @Override
     public boolean connect() {
         InfluxDBClientOptions.Builder optionsBuilder = InfluxDBClientOptions.builder().url(configuration.getUrl())
-                .org(configuration.getDatabaseName()).bucket(configuration.getRetentionPolicy());
+                .org(configuration.getDatabaseName()).bucket(configuration.getRetentionPolicy())
+                .okHttpClient(RepositoryFactory.createHttpClientBuilder(configuration));
         char[] token = configuration.getTokenAsCharArray();
         if (token.length > 0) {
             optionsBuilder.authenticateToken(token);
@@ -91,10 +99,17 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
         InfluxDBClientOptions clientOptions = optionsBuilder.build();
 
         final InfluxDBClient createdClient = InfluxDBClientFactory.create(clientOptions);
+        if (configuration.isGzip()) {
+            createdClient.enableGzip();
+        }
         this.client = createdClient;
-        logger.debug("Succesfully connected to InfluxDB. Instance ready={}", createdClient.ready());
         queryAPI = createdClient.getQueryApi();
-        writeAPI = createdClient.getWriteApi();
+        final WriteApi createdWriteAPI = createdClient.getWriteApi();
+        createdWriteAPI.listenEvents(WriteErrorEvent.class, event -> {
+            logger.debug("Error writing points: {}", event.getThrowable().getMessage());
+            writeErrorListener.accept(event.getThrowable());
+        });
+        writeAPI = createdWriteAPI;
         return checkConnectionStatus();
     }
 
@@ -104,10 +119,17 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
     @Override
     public void disconnect() {
         final InfluxDBClient currentClient = this.client;
+        this.client = null;
+        this.queryAPI = null;
+        this.writeAPI = null;
         if (currentClient != null) {
             currentClient.close();
         }
-        this.client = null;
+    }
+
+    @Override
+    public void setWriteErrorListener(Consumer<Throwable> writeErrorListener) {
+        this.writeErrorListener = writeErrorListener;
     }
 
     /**
@@ -119,14 +141,19 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
     public boolean checkConnectionStatus() {
         final InfluxDBClient currentClient = client;
         if (currentClient != null) {
-            Ready ready = currentClient.ready();
-            boolean isUp = ready != null && ready.getStatus() == Ready.StatusEnum.READY;
-            if (isUp) {
-                logger.debug("database status is OK");
-            } else {
-                logger.warn("database not ready");
+            try {
+                Ready ready = currentClient.ready();
+                boolean isUp = ready != null && ready.getStatus() == Ready.StatusEnum.READY;
+                if (isUp) {
+                    logger.debug("database status is OK");
+                } else {
+                    logger.warn("database not ready");
+                }
+                return isUp;
+            } catch (RuntimeException e) {
+                logger.warn("database connection failed: {}", e.getMessage());
+                return false;
             }
-            return isUp;
         } else {
             logger.warn("checkConnection: database is not connected");
             return false;
@@ -148,6 +175,29 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
         }
     }
 
+    /**
+     * Write points in line protocol format waiting until they are written
+     *
+     * @param lineProtocolRecords Points to write
+     * @return True if points were written, otherwise false
+     */
+    @Override
+    public boolean writeRecords(List<String> lineProtocolRecords) {
+        final InfluxDBClient currentClient = client;
+        if (currentClient != null) {
+            try {
+                currentClient.getWriteApiBlocking().writeRecords(WritePrecision.MS, lineProtocolRecords);
+                return true;
+            } catch (RuntimeException e) {
+                logger.warn("Error writing {} points: {}", lineProtocolRecords.size(), e.getMessage());
+                return false;
+            }
+        } else {
+            logger.warn("Write of {} points ignored due to client isn't connected", lineProtocolRecords.size());
+            return false;
+        }
+    }
+
     private Point convertPointToClientFormat(InfluxPoint point) {
         Point clientPoint = Point.measurement(point.getMeasurementName()).time(point.getTime(), WritePrecision.MS);
         setPointValue(point.getValue(), clientPoint);
@@ -187,23 +237,49 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
         }
     }
 
+    /**
+     * Executes Flux query streaming its results using the asynchronous query API
+     *
+     * @param query Query
+     * @return Query results
+     */
+    @Override
+    public InfluxRowStream queryStream(String query) {
+        final QueryApi currentQueryAPI = queryAPI;
+        if (currentQueryAPI != null) {
+            InfluxRowStream stream = new InfluxRowStream();
+            currentQueryAPI.query(query, (cancellable, record) -> {
+                stream.setCancelAction(cancellable::cancel);
+                if (!stream.offer(mapRecordToRow(record))) {
+                    cancellable.cancel();
+                }
+            }, stream::fail, stream::complete);
+            return stream;
+        } else {
+            logger.warn("Returning empty result because queryAPI isn't present");
+            return InfluxRowStream.empty();
+        }
+    }
+
     private List<InfluxRow> convertClientResutToRepository(List<FluxTable> clientResult) {
         return clientResult.stream().flatMap(this::mapRawResultToHistoric).collect(Collectors.toList());
     }
 
     private Stream<InfluxRow> mapRawResultToHistoric(FluxTable rawRow) {
-        return rawRow.getRecords().stream().map(r -> {
-            String itemName = (String) r.getValueByKey(InfluxDBConstants.TAG_ITEM_NAME);
-            Object value = r.getValueByKey(COLUMN_VALUE_NAME_V2);
-            Instant time = (Instant) r.getValueByKey(COLUMN_TIME_NAME_V2);
-            return new InfluxRow(time, itemName, value);
-        });
+        return rawRow.getRecords().stream().map(this::mapRecordToRow);
+    }
+
+    private InfluxRow mapRecordToRow(FluxRecord record) {
+        String itemName = (String) record.getValueByKey(InfluxDBConstants.TAG_ITEM_NAME);
+        Object value = record.getValueByKey(COLUMN_VALUE_NAME_V2);
+        Instant time = (Instant) record.getValueByKey(COLUMN_TIME_NAME_V2);
+        return new InfluxRow(time, itemName, value);
     }
 
     /**
-     * Return all stored item names with it's count of stored points
+     * Return all stored measurement names with it's count of stored points
      *
-     * @return Map with <ItemName,ItemCount> entries
+     * @return Map with <MeasurementName,Count> entries
      */
     @Override
     public Map<String, Integer> getStoredItemsCount() {
@@ -214,12 +290,13 @@ public class InfluxDB2RepositoryImpl implements InfluxDBRepository {
             // Query wrote by hand https://github.com/influxdata/influxdb-client-java/issues/75
             String query = "from(bucket: \"" + configuration.getRetentionPolicy() + "\")\n"
                     + "  |> range(start:-365d)\n" + "  |> filter(fn: (r) => exists r." + TAG_ITEM_NAME + " )\n"
-                    + "  |> group(columns: [\"" + TAG_ITEM_NAME + "\"], mode:\"by\")\n" + "  |> count()\n"
-                    + "  |> group()";
+                    + "  |> group(columns: [\"" + COLUMN_MEASUREMENT_NAME_V2 + "\"], mode:\"by\")\n"
+                    + "  |> count()\n" + "  |> group()";
 
             List<FluxTable> queryResult = currentQueryAPI.query(query);
             queryResult.stream().findFirst().orElse(new FluxTable()).getRecords().forEach(row -> {
-                result.put((String) row.getValueByKey(TAG_ITEM_NAME), ((Number) row.getValue()).intValue());
+                result.put((String) row.getValueByKey(COLUMN_MEASUREMENT_NAME_V2),
+                        ((Number) row.getValue()).intValue());
             });
             return result;
         } else {
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.DefaultLocation;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+@ExtendWith(MockitoExtension.class)
+@NonNullByDefault(value = { DefaultLocation.PARAMETER, DefaultLocation.RETURN_TYPE })
+public class InfluxDBConnectionMonitorTest {
+    private @Mock InfluxDBRepository influxDBRepository;
+    private @Mock ScheduledExecutorService scheduler;
+    private AtomicInteger recoveries;
+    private InfluxDBConnectionMonitor instance;
+
+    @BeforeEach
+    public void before() {
+        recoveries = new AtomicInteger();
+        instance = new InfluxDBConnectionMonitor(influxDBRepository, scheduler, 10_000, 8_000,
+                recoveries::incrementAndGet);
+        instance.start();
+    }
+
+    @AfterEach
+    public void after() {
+        instance = null;
+        influxDBRepository = null;
+        scheduler = null;
+        recoveries = null;
+    }
+
+    @Test
+    public void availableConnectionIsCheckedAgainAfterInterval() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.checkConnectionStatus()).thenReturn(true);
+
+        instance.check();
+
+        assertThat(instance.getState(), is(InfluxDBConnectionMonitor.State.CLOSED));
+        assertThat(instance.isAvailable(), is(true));
+        verify(scheduler).schedule(any(Runnable.class), eq(10_000L), eq(TimeUnit.MILLISECONDS));
+        verify(influxDBRepository, never()).connect();
+    }
+
+    @Test
+    public void failedCheckOpensCircuitAndRetriesWithExponentialBackoff() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.checkConnectionStatus()).thenReturn(false);
+        when(influxDBRepository.connect()).thenReturn(false);
+
+        instance.check();
+        instance.check();
+        instance.check();
+        instance.check();
+        instance.check();
+
+        assertThat(instance.getState(), is(InfluxDBConnectionMonitor.State.OPEN));
+        assertThat(instance.isAvailable(), is(false));
+        verify(scheduler).schedule(any(Runnable.class), eq(1_000L), eq(TimeUnit.MILLISECONDS));
+        verify(scheduler).schedule(any(Runnable.class), eq(2_000L), eq(TimeUnit.MILLISECONDS));
+        verify(scheduler).schedule(any(Runnable.class), eq(4_000L), eq(TimeUnit.MILLISECONDS));
+        verify(scheduler, times(2)).schedule(any(Runnable.class), eq(8_000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(recoveries.get(), is(0));
+    }
+
+    @Test
+    public void successfulReconnectionClosesCircuitAndRunsRecoveryAction() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.checkConnectionStatus()).thenReturn(false);
+        when(influxDBRepository.connect()).thenReturn(false, true);
+
+        instance.check();
+        instance.check();
+
+        assertThat(instance.isAvailable(), is(true));
+        assertThat(recoveries.get(), is(1));
+        verify(influxDBRepository, times(2)).connect();
+    }
+
+    @Test
+    public void writeFailureOpensCircuit() {
+        instance.writeFailed();
+
+        assertThat(instance.isAvailable(), is(false));
+        verify(scheduler, times(2)).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void checkRequestedWhileCheckIsRunningIsExecutedAfterIt() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.checkConnectionStatus()).thenAnswer(invocation -> {
+            instance.writeFailed();
+            instance.check();
+            return true;
+        });
+
+        instance.check();
+
+        verify(influxDBRepository, times(1)).checkConnectionStatus();
+        verify(scheduler, times(2)).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+        verify(scheduler, never()).schedule(any(Runnable.class), eq(10_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void stoppedMonitorDoesNotScheduleChecks() {
+        instance.stop();
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.checkConnectionStatus()).thenReturn(true);
+
+        instance.check();
+
+        verify(scheduler, never()).schedule(any(Runnable.class), eq(10_000L), eq(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.DefaultLocation;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault(value = { DefaultLocation.PARAMETER, DefaultLocation.RETURN_TYPE })
+public class InfluxDBDiskBufferTest {
+    private @TempDir Path directory;
+
+    @Test
+    public void shouldReplayPointsInBatches() throws IOException {
+        InfluxDBDiskBuffer buffer = new InfluxDBDiskBuffer(directory, 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            buffer.append("item value=" + i + "i " + i);
+        }
+
+        List<List<String>> batches = new ArrayList<>();
+        assertThat(buffer.replay(batch -> batches.add(new ArrayList<>(batch)), 2), is(true));
+
+        assertThat(batches, hasSize(3));
+        assertThat(batches.get(0), contains("item value=0i 0", "item value=1i 1"));
+        assertThat(batches.get(2), contains("item value=4i 4"));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldKeepPointsIfReplayFails() throws IOException {
+        InfluxDBDiskBuffer buffer = new InfluxDBDiskBuffer(directory, 1024 * 1024);
+        buffer.append("item value=1i 1");
+
+        assertThat(buffer.replay(batch -> false, 10), is(false));
+        assertThat(buffer.isEmpty(), is(false));
+
+        List<String> written = new ArrayList<>();
+        assertThat(buffer.replay(written::addAll, 10), is(true));
+        assertThat(written, contains("item value=1i 1"));
+    }
+
+    @Test
+    public void shouldKeepPointsAfterRestart() throws IOException {
+        InfluxDBDiskBuffer buffer = new InfluxDBDiskBuffer(directory, 1024 * 1024);
+        buffer.append("item value=1i 1");
+        buffer.close();
+
+        InfluxDBDiskBuffer restartedBuffer = new InfluxDBDiskBuffer(directory, 1024 * 1024);
+        List<String> written = new ArrayList<>();
+        assertThat(restartedBuffer.replay(written::addAll, 10), is(true));
+        assertThat(written, contains("item value=1i 1"));
+    }
+
+    @Test
+    public void shouldDiscardOldestPointsWhenFull() throws IOException {
+        InfluxDBDiskBuffer buffer = new InfluxDBDiskBuffer(directory, 4096);
+        for (int i = 0; i < 1000; i++) {
+            buffer.append("item value=" + i + "i " + i);
+        }
+
+        assertThat(buffer.getSize(), lessThanOrEqualTo(4096L + 1024L));
+        List<String> written = new ArrayList<>();
+        buffer.replay(written::addAll, 100);
+        assertThat(written, not(hasItem("item value=0i 0")));
+        assertThat(written, hasItem("item value=999i 999"));
+    }
+
+    @Test
+    public void shouldReplayPointsAsTheyWereBuffered() throws IOException {
+        InfluxDBDiskBuffer buffer = new InfluxDBDiskBuffer(directory, 1024 * 1024);
+        List<String> points = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            InfluxPoint point = InfluxPoint.newBuilder("my item").withTime(Instant.ofEpochMilli(i))
+                    .withValue("line " + i + "\nsays \"hi\", \\o/").withTag("label", "a,b=c\nd").build();
+            points.add(point.toLineProtocol());
+            buffer.append(point.toLineProtocol());
+        }
+        buffer.close();
+
+        InfluxDBDiskBuffer restartedBuffer = new InfluxDBDiskBuffer(directory, 1024 * 1024);
+        List<List<String>> batches = new ArrayList<>();
+        assertThat(restartedBuffer.replay(batch -> batches.add(new ArrayList<>(batch)), 2), is(true));
+
+        assertThat(batches, hasSize(3));
+        assertThat(batches.get(0), contains(points.get(0), points.get(1)));
+        assertThat(batches.get(1), contains(points.get(2), points.get(3)));
+        assertThat(batches.get(2), contains(points.get(4)));
+        assertThat(batches.get(0).get(0),
+                equalTo("my\\ item,label=a\\,b\\=c\\ d value=\"line 0 says \\\"hi\\\", \\\\o/\" 0"));
+    }
+}
@@ -12,10 +12,14 @@
  */
 package org.openhab.persistence.influxdb.internal;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.eclipse.jdt.annotation.DefaultLocation;
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -28,6 +32,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.items.MetadataRegistry;
+import org.openhab.core.persistence.PersistenceItemInfo;
 import org.openhab.persistence.influxdb.InfluxDBPersistenceService;
 
 /**
@@ -39,6 +44,7 @@ public class InfluxDBPersistenceServiceTest {
     private InfluxDBPersistenceService instance;
 
     private @Mock InfluxDBRepository influxDBRepository;
+    private @Mock ScheduledExecutorService scheduler;
 
     private Map<String, @Nullable Object> validConfig;
     private Map<String, @Nullable Object> invalidConfig;
@@ -50,6 +56,11 @@ public class InfluxDBPersistenceServiceTest {
             protected InfluxDBRepository createInfluxDBRepository() {
                 return influxDBRepository;
             }
+
+            @Override
+            protected ScheduledExecutorService createScheduler() {
+                return scheduler;
+            }
         };
 
         validConfig = ConfigurationTestHelper.createValidConfigurationParameters();
@@ -62,6 +73,7 @@ public class InfluxDBPersistenceServiceTest {
         invalidConfig = null;
         instance = null;
         influxDBRepository = null;
+        scheduler = null;
     }
 
     @Test
@@ -97,6 +109,20 @@ public class InfluxDBPersistenceServiceTest {
         verify(influxDBRepository).write(any());
     }
 
+    @Test
+    public void storedPointIsCountedUnderItsMeasurementName() {
+        instance.activate(validConfig);
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        instance.store(ItemTestHelper.createNumberItem("number", 5), "alias");
+
+        Set<PersistenceItemInfo> itemInfo = instance.getItemInfo();
+
+        assertThat(itemInfo, hasSize(1));
+        PersistenceItemInfo info = itemInfo.iterator().next();
+        assertThat(info.getName(), is("alias"));
+        assertThat(info.getCount(), is(1));
+    }
+
     @Test
     public void storeItemWithDisconnectedRepositoryIsIgnored() {
         instance.activate(validConfig);
@@ -19,17 +19,21 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.function.Function;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.junit.jupiter.api.Test;
 import org.openhab.core.library.items.ContactItem;
 import org.openhab.core.library.items.DateTimeItem;
+import org.openhab.core.library.items.DimmerItem;
 import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.library.items.SwitchItem;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.types.State;
 
 /**
  * @author Joan Pujol Espinar - Initial contribution
@@ -85,4 +89,23 @@ public class InfluxDBStateConvertUtilsTest {
                 ZonedDateTime.ofInstant(Instant.ofEpochMilli(val), ZoneId.systemDefault()));
         assertThat(InfluxDBStateConvertUtils.objectToState(val, item), equalTo(expected));
     }
+
+    @Test
+    public void convertNumbersWithStateConverter() {
+        Function<Object, State> numberConverter = InfluxDBStateConvertUtils
+                .createStateConverter(new NumberItem("name"));
+        assertThat(numberConverter.apply(1.12), equalTo(new DecimalType(new BigDecimal("1.12"))));
+        assertThat(numberConverter.apply(5L), equalTo(new DecimalType(5)));
+
+        Function<Object, State> dimmerConverter = InfluxDBStateConvertUtils
+                .createStateConverter(new DimmerItem("name"));
+        assertThat(dimmerConverter.apply(90.0), equalTo(new PercentType(90)));
+    }
+
+    @Test
+    public void convertDoubleToOnOffState() {
+        SwitchItem onOffItem = new SwitchItem("name");
+        assertThat(InfluxDBStateConvertUtils.objectToState(1.0, onOffItem), equalTo(OnOffType.ON));
+        assertThat(InfluxDBStateConvertUtils.objectToState(0.0, onOffItem), equalTo(OnOffType.OFF));
+    }
 }
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.math.BigInteger;
+import java.time.Instant;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxPointTest {
+
+    @Test
+    public void convertIntegerPointToLineProtocol() {
+        InfluxPoint point = InfluxPoint.newBuilder("my item").withTime(Instant.ofEpochMilli(1000))
+                .withValue(BigInteger.valueOf(5)).withTag("item", "my,item").withTag("category", "a=b").build();
+
+        assertThat(point.toLineProtocol(), equalTo("my\\ item,category=a\\=b,item=my\\,item value=5i 1000"));
+    }
+
+    @Test
+    public void convertDecimalPointToLineProtocol() {
+        InfluxPoint point = InfluxPoint.newBuilder("item").withTime(Instant.ofEpochMilli(1000)).withValue(1.5)
+                .build();
+
+        assertThat(point.toLineProtocol(), equalTo("item value=1.5 1000"));
+    }
+
+    @Test
+    public void convertStringPointToLineProtocol() {
+        InfluxPoint point = InfluxPoint.newBuilder("item").withTime(Instant.ofEpochMilli(1000))
+                .withValue("say \"hi\"").build();
+
+        assertThat(point.toLineProtocol(), equalTo("item value=\"say \\\"hi\\\"\" 1000"));
+    }
+
+    @Test
+    public void replaceLineBreaksBySpaces() {
+        InfluxPoint point = InfluxPoint.newBuilder("my\nitem").withTime(Instant.ofEpochMilli(1000))
+                .withValue("first\r\nsecond").withTag("label", "a\nb").build();
+
+        assertThat(point.toLineProtocol(), equalTo("my\\ item,label=a\\ b value=\"first  second\" 1000"));
+    }
+}
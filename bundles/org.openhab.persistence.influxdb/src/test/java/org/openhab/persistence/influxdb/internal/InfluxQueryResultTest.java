@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxQueryResultTest {
+
+    @Test
+    public void queryIsExecutedForEachIterationAndCancelledWhenAllRowsAreRead() {
+        AtomicInteger executions = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        InfluxQueryResult<Object> result = new InfluxQueryResult<>(() -> {
+            executions.incrementAndGet();
+            return createStream(cancelled, 1, 2);
+        }, () -> InfluxRow::getValue);
+
+        List<Object> values = new ArrayList<>();
+        result.forEach(values::add);
+
+        assertThat(values, contains(1, 2));
+        assertThat(executions.get(), is(1));
+        assertThat(cancelled.get(), is(true));
+
+        values.clear();
+        result.forEach(values::add);
+
+        assertThat(values, contains(1, 2));
+        assertThat(executions.get(), is(2));
+    }
+
+    @Test
+    public void closeCancelsQueriesWhenIterationStopsEarly() {
+        AtomicBoolean cancelled1 = new AtomicBoolean();
+        AtomicBoolean cancelled2 = new AtomicBoolean();
+        Iterator<AtomicBoolean> cancelled = List.of(cancelled1, cancelled2).iterator();
+        InfluxQueryResult<Object> result = new InfluxQueryResult<>(() -> createStream(cancelled.next(), 1, 2, 3),
+                () -> InfluxRow::getValue);
+
+        Iterator<Object> iterator1 = result.iterator();
+        Iterator<Object> iterator2 = result.iterator();
+        assertThat(iterator1.next(), is(1));
+        assertThat(iterator2.next(), is(1));
+        result.close();
+
+        assertThat(cancelled1.get(), is(true));
+        assertThat(cancelled2.get(), is(true));
+        assertThat(iterator1.hasNext(), is(false));
+        assertThat(iterator2.hasNext(), is(false));
+        assertThat(result.iterator().hasNext(), is(false));
+    }
+
+    private static InfluxRowStream createStream(AtomicBoolean cancelled, int... values) {
+        InfluxRowStream stream = new InfluxRowStream(values.length + 1, 1000);
+        stream.setCancelAction(() -> cancelled.set(true));
+        for (int value : values) {
+            stream.offer(new InfluxRow(Instant.ofEpochMilli(value), "item", value));
+        }
+        stream.complete();
+        return stream;
+    }
+}
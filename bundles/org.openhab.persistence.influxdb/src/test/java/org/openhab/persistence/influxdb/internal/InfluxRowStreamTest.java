@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxRowStreamTest {
+
+    @Test
+    public void shouldReturnOfferedRowsUntilComplete() throws InterruptedException {
+        InfluxRowStream stream = new InfluxRowStream(2, 1000);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                stream.offer(createRow(i));
+            }
+            stream.complete();
+        });
+        producer.start();
+
+        int count = 0;
+        while (stream.hasNext()) {
+            assertThat(stream.next().getValue(), is(count));
+            count++;
+        }
+        producer.join();
+        assertThat(count, is(5));
+    }
+
+    @Test
+    public void emptyStreamHasNoRows() {
+        assertThat(InfluxRowStream.empty().hasNext(), is(false));
+    }
+
+    @Test
+    public void failureIsRethrownToConsumer() {
+        InfluxRowStream stream = new InfluxRowStream(2, 1000);
+        stream.offer(createRow(1));
+        stream.fail(new IllegalStateException("error"));
+
+        assertThat(stream.next().getValue(), is(1));
+        assertThrows(UnnexpectedConditionException.class, stream::hasNext);
+    }
+
+    @Test
+    public void missingResultsAreReportedToConsumer() {
+        InfluxRowStream stream = new InfluxRowStream(2, 10);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        stream.setCancelAction(() -> cancelled.set(true));
+
+        assertThrows(UnnexpectedConditionException.class, stream::hasNext);
+        assertThat(cancelled.get(), is(true));
+    }
+
+    @Test
+    public void closeCancelsQueryAndRejectsRows() {
+        InfluxRowStream stream = new InfluxRowStream(2, 1000);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        stream.setCancelAction(() -> cancelled.set(true));
+
+        stream.close();
+
+        assertThat(cancelled.get(), is(true));
+        assertThat(stream.offer(createRow(1)), is(false));
+        assertThat(stream.hasNext(), is(false));
+    }
+
+    @Test
+    public void notConsumedStreamCancelsQuery() {
+        // the server timeout doesn't delay the cancellation
+        InfluxRowStream stream = new InfluxRowStream(1, 60_000, 10);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        stream.setCancelAction(() -> cancelled.set(true));
+
+        assertThat(stream.offer(createRow(1)), is(true));
+        assertThat(stream.offer(createRow(2)), is(false));
+        assertThat(cancelled.get(), is(true));
+    }
+
+    private static InfluxRow createRow(int value) {
+        return new InfluxRow(Instant.ofEpochMilli(value), "item", value);
+    }
+}
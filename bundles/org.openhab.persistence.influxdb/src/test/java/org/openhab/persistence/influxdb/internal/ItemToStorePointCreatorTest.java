@@ -14,7 +14,7 @@ package org.openhab.persistence.influxdb.internal;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 import java.math.BigInteger;
 import java.util.Map;
@@ -132,4 +132,32 @@ public class ItemToStorePointCreatorTest {
         assertThat(point.getTags(), hasEntry("key1", "val1"));
         assertThat(point.getTags(), hasEntry("key2", "val2"));
     }
+
+    @Test
+    public void shouldResolveMetadataOnlyOncePerItem() {
+        NumberItem item = ItemTestHelper.createNumberItem("myitem", 5);
+        MetadataKey metadataKey = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, item.getName());
+
+        when(metadataRegistry.get(metadataKey)).thenReturn(new Metadata(metadataKey, "", Map.of("key1", "val1")));
+
+        instance.convert(item, null);
+        InfluxPoint point = instance.convert(item, null);
+        assertThat(point.getTags(), hasEntry("key1", "val1"));
+        verify(metadataRegistry, times(1)).get(metadataKey);
+    }
+
+    @Test
+    public void shouldResolveMetadataAgainAfterInvalidation() {
+        NumberItem item = ItemTestHelper.createNumberItem("myitem", 5);
+        MetadataKey metadataKey = new MetadataKey(InfluxDBPersistenceService.SERVICE_NAME, item.getName());
+
+        when(metadataRegistry.get(metadataKey)).thenReturn(null);
+        InfluxPoint point = instance.convert(item, null);
+        assertThat(point.getTags(), not(hasKey("key1")));
+
+        when(metadataRegistry.get(metadataKey)).thenReturn(new Metadata(metadataKey, "", Map.of("key1", "val1")));
+        instance.invalidate(item.getName());
+        point = instance.convert(item, null);
+        assertThat(point.getTags(), hasEntry("key1", "val1"));
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.eclipse.jdt.annotation.DefaultLocation;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+@ExtendWith(MockitoExtension.class)
+@NonNullByDefault(value = { DefaultLocation.PARAMETER, DefaultLocation.RETURN_TYPE })
+public class StoredItemsCountCacheTest {
+    private @Mock InfluxDBRepository influxDBRepository;
+    private @Mock ScheduledExecutorService scheduler;
+    private StoredItemsCountCache instance;
+
+    @BeforeEach
+    public void before() {
+        instance = new StoredItemsCountCache(influxDBRepository, scheduler, 60_000);
+    }
+
+    @AfterEach
+    public void after() {
+        instance = null;
+        influxDBRepository = null;
+        scheduler = null;
+    }
+
+    @Test
+    public void shouldReturnCountsWithoutQueryingServer() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.getStoredItemsCount()).thenReturn(Map.of("item1", 10, "item2", 5));
+
+        instance.refresh();
+        Map<String, Integer> counts = instance.getStoredItemsCount();
+
+        assertThat(instance.isLoaded(), is(true));
+        assertThat(counts, hasEntry("item1", 10));
+        assertThat(counts, hasEntry("item2", 5));
+        verify(influxDBRepository, times(1)).getStoredItemsCount();
+    }
+
+    @Test
+    public void shouldIncrementCountsWithWrittenPoints() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.getStoredItemsCount()).thenReturn(Map.of("item1", 10));
+
+        instance.refresh();
+        instance.pointWritten("item1");
+        instance.pointWritten("item3");
+
+        Map<String, Integer> counts = instance.getStoredItemsCount();
+        assertThat(counts, hasEntry("item1", 11));
+        assertThat(counts, hasEntry("item3", 1));
+    }
+
+    @Test
+    public void shouldNotCountPointsWrittenDuringRefreshTwice() {
+        when(influxDBRepository.isConnected()).thenReturn(true);
+        when(influxDBRepository.getStoredItemsCount()).thenAnswer(invocation -> {
+            // point written before the server counts it
+            instance.pointWritten("item1");
+            return Map.of("item1", 11);
+        });
+
+        instance.refresh();
+
+        assertThat(instance.getStoredItemsCount(), hasEntry("item1", 11));
+    }
+
+    @Test
+    public void shouldNotRefreshIfNotConnected() {
+        when(influxDBRepository.isConnected()).thenReturn(false);
+
+        instance.refresh();
+
+        assertThat(instance.isLoaded(), is(false));
+        verify(influxDBRepository, never()).getStoredItemsCount();
+    }
+}
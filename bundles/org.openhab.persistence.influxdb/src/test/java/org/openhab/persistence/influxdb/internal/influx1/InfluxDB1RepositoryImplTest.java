@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal.influx1;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.openhab.persistence.influxdb.internal.InfluxDBConfiguration.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.influxdb.internal.InfluxDBConfiguration;
+import org.openhab.persistence.influxdb.internal.InfluxDBVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class InfluxDB1RepositoryImplTest {
+    private final Logger logger = LoggerFactory.getLogger(InfluxDB1RepositoryImplTest.class);
+
+    // bandwidth of the link to the stand-in server, compression only pays off on a slow link
+    private static final long BYTES_PER_SECOND = 1_000_000;
+
+    /**
+     * Compares writes with and without gzip compression against a local stand-in of an InfluxDB 1.x server, which
+     * delays its responses as if the requests were sent over a link with {@link #BYTES_PER_SECOND}. It only logs the
+     * times, so it doesn't run with the build; remove the {@link Disabled} annotation to run it locally.
+     */
+    @Test
+    @Disabled("benchmark, run manually")
+    public void benchmarkGzip() throws IOException {
+        AtomicLong receivedBytes = new AtomicLong();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ping", exchange -> {
+            exchange.getResponseHeaders().add("X-Influxdb-Version", "1.8.0");
+            respond(exchange);
+        });
+        server.createContext("/write", exchange -> {
+            long bytes = exchange.getRequestBody().readAllBytes().length;
+            receivedBytes.addAndGet(bytes);
+            try {
+                Thread.sleep(bytes * 1000 / BYTES_PER_SECOND);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange);
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort();
+            List<String> records = createRecords(1000);
+            int batches = 100;
+            // warm up both clients before measuring
+            write(url, false, records, batches);
+            write(url, true, records, batches);
+
+            receivedBytes.set(0);
+            long plainNanos = write(url, false, records, batches);
+            long plainBytes = receivedBytes.getAndSet(0);
+            long gzipNanos = write(url, true, records, batches);
+            long gzipBytes = receivedBytes.get();
+
+            logger.info("{} batches of {} points took {} ms and {} bytes without gzip, {} ms and {} bytes with gzip",
+                    batches, records.size(), plainNanos / 1000000, plainBytes, gzipNanos / 1000000, gzipBytes);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private long write(String url, boolean gzip, List<String> records, int batches) {
+        Map<String, @Nullable Object> config = new HashMap<>();
+        config.put(URL_PARAM, url);
+        config.put(VERSION_PARAM, InfluxDBVersion.V1.name());
+        config.put(USER_PARAM, "openhab");
+        config.put(PASSWORD_PARAM, "openhab");
+        config.put(GZIP_PARAM, gzip);
+        InfluxDB1RepositoryImpl repository = new InfluxDB1RepositoryImpl(new InfluxDBConfiguration(config));
+        assertThat(repository.connect(), is(true));
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                assertThat(repository.writeRecords(records), is(true));
+            }
+            return System.nanoTime() - start;
+        } finally {
+            repository.disconnect();
+        }
+    }
+
+    private static List<String> createRecords(int count) {
+        List<String> records = new ArrayList<>();
+        long time = 1600000000000L;
+        for (int i = 0; i < count; i++) {
+            records.add("Temperature_" + (i % 20) + ",item=Temperature_" + (i % 20) + " value=" + (20 + i % 50 / 10.0)
+                    + " " + (time + i * 1000));
+        }
+        return records;
+    }
+
+    private static void respond(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+        }
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+    }
+}
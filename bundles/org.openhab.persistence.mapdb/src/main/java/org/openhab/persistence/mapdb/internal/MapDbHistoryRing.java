@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Ring buffer of the last numeric values of an item, packed in a <code>long[]</code> so it's stored by MapDB as a
+ * single array of primitives.
+ *
+ * The array starts with the index of the next slot and the number of values, followed by a time in milliseconds and
+ * the bits of the value for each slot. Rings are never modified, adding a value returns a new ring.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public final class MapDbHistoryRing {
+
+    // index of the next slot and number of values
+    private static final int HEADER_SIZE = 2;
+
+    /**
+     * Receives the values of a ring
+     */
+    @FunctionalInterface
+    public interface ValueConsumer {
+        void accept(long time, double value);
+    }
+
+    private MapDbHistoryRing() {
+        // only static methods
+    }
+
+    /**
+     * Returns a new ring with the given value added, replacing the oldest value if the ring is full.
+     *
+     * @param ring the ring to add the value to, or null to create a new ring
+     * @param size the number of values kept, the newest values are kept if the ring had another size
+     * @param time the time of the value in milliseconds
+     * @param value the value
+     * @return the new ring
+     */
+    public static long[] add(long @Nullable [] ring, int size, long time, double value) {
+        long[] result;
+        if (ring == null || ring.length != HEADER_SIZE + 2 * size) {
+            long[] resized = new long[HEADER_SIZE + 2 * size];
+            if (ring != null) {
+                forEach(ring, Long.MIN_VALUE, Long.MAX_VALUE,
+                        (oldTime, oldValue) -> addInPlace(resized, size, oldTime, oldValue));
+            }
+            result = resized;
+        } else {
+            result = ring.clone();
+        }
+        addInPlace(result, size, time, value);
+        return result;
+    }
+
+    /**
+     * Passes the values of the ring within the given time range to the consumer, from the oldest to the newest.
+     *
+     * @param ring the ring
+     * @param from the start of the time range in milliseconds, inclusive
+     * @param to the end of the time range in milliseconds, inclusive
+     * @param consumer receives the values
+     */
+    public static void forEach(long[] ring, long from, long to, ValueConsumer consumer) {
+        int size = (ring.length - HEADER_SIZE) / 2;
+        int count = getCount(ring);
+        int next = (int) ring[0];
+        for (int i = 0; i < count; i++) {
+            int slot = HEADER_SIZE + 2 * ((next - count + i + size) % size);
+            long time = ring[slot];
+            if (time >= from && time <= to) {
+                consumer.accept(time, Double.longBitsToDouble(ring[slot + 1]));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values in the ring.
+     */
+    public static int getCount(long[] ring) {
+        return (int) ring[1];
+    }
+
+    private static void addInPlace(long[] ring, int size, long time, double value) {
+        int next = (int) ring[0];
+        ring[HEADER_SIZE + 2 * next] = time;
+        ring[HEADER_SIZE + 2 * next + 1] = Double.doubleToRawLongBits(value);
+        ring[0] = (next + 1) % size;
+        ring[1] = Math.min(ring[1] + 1, size);
+    }
+}
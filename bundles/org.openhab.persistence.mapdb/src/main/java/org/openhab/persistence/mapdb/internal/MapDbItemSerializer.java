@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.mapdb.Serializer;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.TypeParser;
+
+/**
+ * A binary MapDB {@link Serializer} for {@link MapDbItem}s.
+ *
+ * The name and the timestamp are followed by a type tag and the state, as primitive values for the common state types,
+ * and as the class name and string representation of the state for all others.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class MapDbItemSerializer implements Serializer<MapDbItem>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte TYPE_OTHER = 0;
+    private static final byte TYPE_DECIMAL = 1;
+    private static final byte TYPE_PERCENT = 2;
+    private static final byte TYPE_HSB = 3;
+    private static final byte TYPE_ON = 4;
+    private static final byte TYPE_OFF = 5;
+    private static final byte TYPE_OPEN = 6;
+    private static final byte TYPE_CLOSED = 7;
+    private static final byte TYPE_DATETIME = 8;
+    private static final byte TYPE_STRING = 9;
+    private static final byte TYPE_QUANTITY = 10;
+
+    @Override
+    public void serialize(DataOutput out, MapDbItem item) throws IOException {
+        out.writeUTF(item.getName());
+        out.writeLong(item.getTimestamp().toInstant().toEpochMilli());
+        writeState(out, item.getState());
+    }
+
+    @Override
+    public MapDbItem deserialize(DataInput in, int available) throws IOException {
+        MapDbItem item = new MapDbItem();
+        item.setName(in.readUTF());
+        item.setTimestamp(new Date(in.readLong()));
+        State state = readState(in);
+        if (state != null) {
+            item.setState(state);
+        }
+        return item;
+    }
+
+    @Override
+    public int fixedSize() {
+        return -1;
+    }
+
+    private void writeState(DataOutput out, State state) throws IOException {
+        // subclasses are checked before their super classes
+        if (state instanceof HSBType) {
+            HSBType hsb = (HSBType) state;
+            out.writeByte(TYPE_HSB);
+            writeDecimal(out, hsb.getHue().toBigDecimal());
+            writeDecimal(out, hsb.getSaturation().toBigDecimal());
+            writeDecimal(out, hsb.getBrightness().toBigDecimal());
+        } else if (state instanceof PercentType) {
+            out.writeByte(TYPE_PERCENT);
+            writeDecimal(out, ((PercentType) state).toBigDecimal());
+        } else if (state instanceof DecimalType) {
+            out.writeByte(TYPE_DECIMAL);
+            writeDecimal(out, ((DecimalType) state).toBigDecimal());
+        } else if (state instanceof OnOffType) {
+            out.writeByte(state == OnOffType.ON ? TYPE_ON : TYPE_OFF);
+        } else if (state instanceof OpenClosedType) {
+            out.writeByte(state == OpenClosedType.OPEN ? TYPE_OPEN : TYPE_CLOSED);
+        } else if (state instanceof DateTimeType) {
+            ZonedDateTime dateTime = ((DateTimeType) state).getZonedDateTime();
+            out.writeByte(TYPE_DATETIME);
+            out.writeLong(dateTime.toInstant().getEpochSecond());
+            out.writeInt(dateTime.getNano());
+            out.writeUTF(dateTime.getZone().getId());
+        } else if (state instanceof StringType) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, state.toFullString());
+        } else if (state instanceof QuantityType) {
+            out.writeByte(TYPE_QUANTITY);
+            writeString(out, state.toFullString());
+        } else {
+            out.writeByte(TYPE_OTHER);
+            out.writeUTF(state.getClass().getName());
+            writeString(out, state.toFullString());
+        }
+    }
+
+    private @Nullable State readState(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_HSB:
+                return new HSBType(new DecimalType(readDecimal(in)), new PercentType(readDecimal(in)),
+                        new PercentType(readDecimal(in)));
+            case TYPE_PERCENT:
+                return new PercentType(readDecimal(in));
+            case TYPE_DECIMAL:
+                return new DecimalType(readDecimal(in));
+            case TYPE_ON:
+                return OnOffType.ON;
+            case TYPE_OFF:
+                return OnOffType.OFF;
+            case TYPE_OPEN:
+                return OpenClosedType.OPEN;
+            case TYPE_CLOSED:
+                return OpenClosedType.CLOSED;
+            case TYPE_DATETIME:
+                Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                return new DateTimeType(ZonedDateTime.ofInstant(instant, ZoneId.of(in.readUTF())));
+            case TYPE_STRING:
+                return new StringType(readString(in));
+            case TYPE_QUANTITY:
+                return new QuantityType<>(readString(in));
+            case TYPE_OTHER:
+                String typeName = in.readUTF();
+                String value = readString(in);
+                try {
+                    @SuppressWarnings("unchecked")
+                    Class<? extends State> stateType = (Class<? extends State>) Class.forName(typeName);
+                    List<Class<? extends State>> types = Collections.singletonList(stateType);
+                    return TypeParser.parseState(types, value);
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    return null;
+                }
+            default:
+                throw new IOException("Unknown state type " + type);
+        }
+    }
+
+    private void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        byte[] unscaledValue = value.unscaledValue().toByteArray();
+        out.writeShort(unscaledValue.length);
+        out.write(unscaledValue);
+        out.writeInt(value.scale());
+    }
+
+    private BigDecimal readDecimal(DataInput in) throws IOException {
+        byte[] unscaledValue = new byte[in.readUnsignedShort()];
+        in.readFully(unscaledValue);
+        return new BigDecimal(new BigInteger(unscaledValue), in.readInt());
+    }
+
+    private void writeString(DataOutput out, String value) throws IOException {
+        // unlike writeUTF, not limited to 64 KB
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -13,6 +13,9 @@
 package org.openhab.persistence.mapdb.internal;
 
 import java.io.File;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -20,9 +23,17 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+
+import javax.measure.Quantity;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -30,8 +41,15 @@ import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.openhab.core.OpenHAB;
 import org.openhab.core.common.ThreadPoolManager;
+import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
 import org.openhab.core.persistence.PersistenceService;
@@ -39,6 +57,7 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -52,11 +71,19 @@ import com.google.gson.GsonBuilder;
  * This is the implementation of the MapDB {@link PersistenceService}. To learn more about MapDB please visit their
  * <a href="http://www.mapdb.org/">website</a>.
  *
+ * Stores are committed in groups: a commit is scheduled with the first store after the last commit, and covers all
+ * stores received until it runs. The database file can be memory mapped and written asynchronously, and the current
+ * states can be kept in memory, so queries don't read the database. Optionally, the last numeric values of each item
+ * are kept in a {@link MapDbHistoryRing}, to answer queries of a time range.
+ *
  * @author Jens Viebig - Initial contribution
  * @author Martin Kühl - Port to 3.x
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class, QueryablePersistenceService.class })
+@Component(service = { PersistenceService.class,
+        QueryablePersistenceService.class }, configurationPid = "org.openhab.mapdb", //
+        property = Constants.SERVICE_PID + "=org.openhab.mapdb")
+@ConfigurableService(category = "persistence", label = "MapDB Persistence Service", description_uri = MapDbPersistenceService.CONFIG_URI)
 public class MapDbPersistenceService implements QueryablePersistenceService {
 
     private static final String SERVICE_ID = "mapdb";
@@ -64,23 +91,59 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
     private static final String DB_FOLDER_NAME = OpenHAB.getUserDataFolder() + File.separator + "persistence"
             + File.separator + "mapdb";
     private static final String DB_FILE_NAME = "storage.mapdb";
+    private static final String ITEM_STATES = "itemStates";
+    // map of former versions, storing the items as JSON
+    private static final String JSON_ITEM_STORE = "itemStore";
+    protected static final String CONFIG_URI = "persistence:mapdb";
+
+    private static final String COMMIT_INTERVAL = "commitInterval";
+    private static final long DEFAULT_COMMIT_INTERVAL = 1000;
+    private static final String MMAP = "mmap";
+    private static final String ASYNC_WRITE = "asyncWrite";
+    private static final String READ_CACHE = "readCache";
+    private static final String HISTORY_SIZE = "historySize";
+    private static final String ITEM_HISTORY = "itemHistory";
+    // the map is read in parallel in these key ranges, item names start with a letter or an underscore. The boundaries
+    // only balance the work: a range holding most of the names, e.g. if all names share a prefix, is read by a single
+    // thread, but every name is in exactly one range, including names outside of ASCII in the last one.
+    private static final String[] KEY_RANGE_BOUNDARIES = { "D", "H", "L", "P", "T", "_", "e", "i", "m", "q", "u" };
 
     private final Logger logger = LoggerFactory.getLogger(MapDbPersistenceService.class);
 
     private final ExecutorService threadPool = ThreadPoolManager.getPool(getClass().getSimpleName());
+    private final ScheduledExecutorService scheduler = ThreadPoolManager
+            .getScheduledPool(getClass().getSimpleName());
+
+    // maximum time in milliseconds between a store and its commit
+    private long commitInterval = DEFAULT_COMMIT_INTERVAL;
+    private final AtomicBoolean commitScheduled = new AtomicBoolean();
+    private final AtomicInteger uncommittedStores = new AtomicInteger();
 
     /** holds the local instance of the MapDB database */
 
     private @NonNullByDefault({}) DB db;
-    private @NonNullByDefault({}) Map<String, String> map;
+    private @NonNullByDefault({}) ConcurrentNavigableMap<String, MapDbItem> map;
+
+    // current states of all items, in front of the map if the read cache is enabled
+    private final Map<String, MapDbItem> cache = new ConcurrentHashMap<>();
+    private boolean readCache = true;
+
+    // last values of each item, if the history is enabled
+    private int historySize;
+    private @Nullable Map<String, long[]> history;
+    private final Object historyLock = new Object();
 
     private transient Gson mapper = new GsonBuilder().registerTypeHierarchyAdapter(State.class, new StateTypeAdapter())
             .create();
 
     @Activate
-    public void activate() {
+    public void activate(final Map<String, Object> config) {
         logger.debug("MapDB persistence service is being activated");
 
+        commitInterval = getLongSetting(config, COMMIT_INTERVAL, DEFAULT_COMMIT_INTERVAL);
+        readCache = getBooleanSetting(config, READ_CACHE, true);
+        historySize = (int) Math.max(0, getLongSetting(config, HISTORY_SIZE, 0));
+
         File folder = new File(DB_FOLDER_NAME);
         if (!folder.exists()) {
             if (!folder.mkdirs()) {
@@ -91,8 +154,30 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
         }
 
         File dbFile = new File(DB_FOLDER_NAME, DB_FILE_NAME);
-        db = DBMaker.newFileDB(dbFile).closeOnJvmShutdown().make();
-        map = db.createTreeMap("itemStore").makeOrGet();
+        DBMaker<?> dbMaker = DBMaker.newFileDB(dbFile).closeOnJvmShutdown();
+        if (getBooleanSetting(config, MMAP, false)) {
+            // falls back to random access files on 32 bit JVMs, where the address space is too small
+            dbMaker = dbMaker.mmapFileEnableIfSupported();
+        }
+        if (getBooleanSetting(config, ASYNC_WRITE, false)) {
+            dbMaker = dbMaker.asyncWriteEnable();
+        }
+        db = dbMaker.make();
+        // MapDB loads the value serializer stored with the map using the context class loader
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(MapDbItemSerializer.class.getClassLoader());
+        try {
+            map = db.createTreeMap(ITEM_STATES).valueSerializer(new MapDbItemSerializer()).makeOrGet();
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+        history = historySize > 0 ? db.createTreeMap(ITEM_HISTORY).makeOrGet() : null;
+        migrateJsonItemStore();
+        if (readCache) {
+            cache.putAll(readAll());
+            logger.debug("Loaded {} item states into the read cache", cache.size());
+        }
         logger.debug("MapDB persistence service is now activated");
     }
 
@@ -100,8 +185,11 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
     public void deactivate() {
         logger.debug("MapDB persistence service deactivated");
         if (db != null) {
+            // stores not committed yet would be lost
+            commit();
             db.close();
         }
+        cache.clear();
         threadPool.shutdown();
     }
 
@@ -117,7 +205,7 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
 
     @Override
     public Set<PersistenceItemInfo> getItemInfo() {
-        return map.values().stream().map(this::deserialize).flatMap(MapDbPersistenceService::streamOptional)
+        return (readCache ? cache : map).values().stream().filter(MapDbPersistenceService::isValid)
                 .collect(Collectors.<PersistenceItemInfo> toUnmodifiableSet());
     }
 
@@ -141,27 +229,131 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
         mItem.setName(localAlias);
         mItem.setState(state);
         mItem.setTimestamp(new Date());
-        String json = serialize(mItem);
-        map.put(localAlias, json);
-        commit();
+        map.put(localAlias, mItem);
+        if (readCache) {
+            cache.put(localAlias, mItem);
+        }
+        storeHistory(localAlias, state, mItem.getTimestamp().toInstant().toEpochMilli());
+        uncommittedStores.incrementAndGet();
+        scheduleCommit();
         logger.debug("Stored '{}' with state '{}' in MapDB database", localAlias, state.toString());
     }
 
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
-        String json = map.get(filter.getItemName());
-        if (json == null) {
+        String itemName = filter.getItemName();
+        if (itemName == null) {
             return Collections.emptyList();
         }
-        Optional<MapDbItem> item = deserialize(json);
-        if (!item.isPresent()) {
+        MapDbItem item = readCache ? cache.get(itemName) : map.get(itemName);
+        if (item == null || !isValid(item)) {
             return Collections.emptyList();
         }
-        return Collections.singletonList(item.get());
+        if (history != null && (filter.getBeginDate() != null || filter.getEndDate() != null)) {
+            return queryHistory(itemName, item.getState(), filter);
+        }
+        return Collections.singletonList(item);
+    }
+
+    private void storeHistory(String name, State state, long time) {
+        Map<String, long[]> history = this.history;
+        // as a DecimalType, percentages are fractions of 1, but they are restored as percentages by toState
+        DecimalType value = state instanceof PercentType ? state.as(PercentType.class) : state.as(DecimalType.class);
+        if (history == null || value == null) {
+            return;
+        }
+        synchronized (historyLock) {
+            history.put(name, MapDbHistoryRing.add(history.get(name), historySize, time, value.doubleValue()));
+        }
+    }
+
+    private List<HistoricItem> queryHistory(String name, State currentState, FilterCriteria filter) {
+        Map<String, long[]> history = this.history;
+        long[] ring = history != null ? history.get(name) : null;
+        if (ring == null) {
+            return Collections.emptyList();
+        }
+        ZonedDateTime beginDate = filter.getBeginDate();
+        ZonedDateTime endDate = filter.getEndDate();
+        long from = beginDate == null ? Long.MIN_VALUE : beginDate.toInstant().toEpochMilli();
+        long to = endDate == null ? Long.MAX_VALUE : endDate.toInstant().toEpochMilli();
+        List<HistoricItem> items = new ArrayList<>(MapDbHistoryRing.getCount(ring));
+        MapDbHistoryRing.forEach(ring, from, to, (time, value) -> {
+            MapDbItem item = new MapDbItem();
+            item.setName(name);
+            item.setState(toState(value, currentState));
+            item.setTimestamp(new Date(time));
+            items.add(item);
+        });
+        if (filter.getOrdering() == Ordering.DESCENDING) {
+            Collections.reverse(items);
+        }
+        long fromIndex = Math.min(items.size(), (long) filter.getPageNumber() * filter.getPageSize());
+        long toIndex = Math.min(items.size(), fromIndex + filter.getPageSize());
+        return items.subList((int) fromIndex, (int) toIndex);
+    }
+
+    /**
+     * Converts a value of the history to the type of the current state of the item
+     */
+    private State toState(double value, State currentState) {
+        if (currentState instanceof OnOffType) {
+            return value != 0 ? OnOffType.ON : OnOffType.OFF;
+        } else if (currentState instanceof OpenClosedType) {
+            return value != 0 ? OpenClosedType.OPEN : OpenClosedType.CLOSED;
+        } else if (currentState instanceof PercentType) {
+            // also for colors, their brightness is stored
+            return new PercentType(BigDecimal.valueOf(value));
+        } else if (currentState instanceof QuantityType) {
+            return toQuantity(value, (QuantityType<?>) currentState);
+        }
+        return new DecimalType(value);
+    }
+
+    private static <T extends Quantity<T>> QuantityType<T> toQuantity(double value, QuantityType<T> currentState) {
+        return new QuantityType<>(value, currentState.getUnit());
+    }
+
+    /**
+     * Reads all items from the map, decoding the key ranges of the map in parallel.
+     *
+     * The items are restored on startup by a query of each item, so the read cache is loaded with this method before
+     * the first query. Without the read cache, each restored item is read from the map by its query.
+     */
+    private Map<String, MapDbItem> readAll() {
+        long start = System.currentTimeMillis();
+        List<ConcurrentNavigableMap<String, MapDbItem>> ranges = new ArrayList<>();
+        ranges.add(map.headMap(KEY_RANGE_BOUNDARIES[0]));
+        for (int i = 1; i < KEY_RANGE_BOUNDARIES.length; i++) {
+            ranges.add(map.subMap(KEY_RANGE_BOUNDARIES[i - 1], KEY_RANGE_BOUNDARIES[i]));
+        }
+        ranges.add(map.tailMap(KEY_RANGE_BOUNDARIES[KEY_RANGE_BOUNDARIES.length - 1]));
+        Map<String, MapDbItem> items = ranges.parallelStream().flatMap(range -> range.values().stream())
+                .filter(MapDbPersistenceService::isValid)
+                .collect(Collectors.toConcurrentMap(MapDbItem::getName, item -> item, (item1, item2) -> item2));
+        logger.debug("Read {} items from MapDB database in {} ms", items.size(), System.currentTimeMillis() - start);
+        return items;
     }
 
-    private String serialize(MapDbItem item) {
-        return mapper.toJson(item);
+    /**
+     * Converts the items stored as JSON by former versions to the binary format.
+     */
+    private void migrateJsonItemStore() {
+        if (!db.exists(JSON_ITEM_STORE)) {
+            return;
+        }
+        Map<String, String> jsonMap = db.getTreeMap(JSON_ITEM_STORE);
+        int count = 0;
+        for (Map.Entry<String, String> entry : jsonMap.entrySet()) {
+            Optional<MapDbItem> item = deserialize(entry.getValue());
+            if (item.isPresent() && !map.containsKey(entry.getKey())) {
+                map.put(entry.getKey(), item.get());
+                count++;
+            }
+        }
+        db.delete(JSON_ITEM_STORE);
+        db.commit();
+        logger.info("Converted {} items stored as JSON to binary format", count);
     }
 
     @SuppressWarnings("null")
@@ -174,15 +366,61 @@ public class MapDbPersistenceService implements QueryablePersistenceService {
         return Optional.of(item);
     }
 
-    private void commit() {
-        threadPool.submit(() -> db.commit());
+    private void scheduleCommit() {
+        if (commitScheduled.compareAndSet(false, true)) {
+            try {
+                if (commitInterval <= 0) {
+                    threadPool.submit(this::commit);
+                } else {
+                    scheduler.schedule(this::commit, commitInterval, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                // the service is being deactivated, which commits anyway
+                commitScheduled.set(false);
+            }
+        }
+    }
+
+    private synchronized void commit() {
+        // stores received from now on schedule the next commit
+        commitScheduled.set(false);
+        int stores = uncommittedStores.getAndSet(0);
+        if (stores == 0 || db == null || db.isClosed()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            db.commit();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to commit {} stores to MapDB database: {}", stores, e.getMessage());
+            // they are committed with the next stores
+            uncommittedStores.addAndGet(stores);
+            return;
+        }
+        long duration = System.currentTimeMillis() - start;
+        logger.trace("Committed {} stores to MapDB database in {} ms", stores, duration);
     }
 
-    private static <T> Stream<T> streamOptional(Optional<T> opt) {
-        if (!opt.isPresent()) {
-            return Stream.empty();
+    private long getLongSetting(Map<String, Object> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", key, value);
+            }
         }
-        return Stream.of(opt.get());
+        return defaultValue;
+    }
+
+    private boolean getBooleanSetting(Map<String, Object> config, String key, boolean defaultValue) {
+        Object value = config.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.toString().trim());
+    }
+
+    private static boolean isValid(MapDbItem item) {
+        // states which couldn't be read are undefined, as undefined states aren't stored
+        return item.isValid() && !(item.getState() instanceof UnDefType);
     }
 
     @Override
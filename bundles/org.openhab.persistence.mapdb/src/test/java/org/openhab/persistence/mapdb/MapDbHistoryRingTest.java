@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.mapdb.internal.MapDbHistoryRing;
+
+/**
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class MapDbHistoryRingTest {
+
+    @Test
+    public void fullRingShouldKeepTheNewestValues() {
+        long[] ring = null;
+        for (int i = 1; i <= 5; i++) {
+            ring = MapDbHistoryRing.add(ring, 3, i * 1000, i);
+        }
+
+        assertThat(MapDbHistoryRing.getCount(ring), is(3));
+        assertThat(values(ring, Long.MIN_VALUE, Long.MAX_VALUE), is(equalTo(List.of(3.0, 4.0, 5.0))));
+    }
+
+    @Test
+    public void addShouldNotModifyTheRing() {
+        long[] ring = MapDbHistoryRing.add(null, 3, 1000, 1);
+
+        MapDbHistoryRing.add(ring, 3, 2000, 2);
+
+        assertThat(values(ring, Long.MIN_VALUE, Long.MAX_VALUE), is(equalTo(List.of(1.0))));
+    }
+
+    @Test
+    public void forEachShouldOnlyPassValuesInTimeRange() {
+        long[] ring = null;
+        for (int i = 1; i <= 5; i++) {
+            ring = MapDbHistoryRing.add(ring, 10, i * 1000, i);
+        }
+
+        assertThat(values(ring, 2000, 4000), is(equalTo(List.of(2.0, 3.0, 4.0))));
+    }
+
+    @Test
+    public void resizedRingShouldKeepTheNewestValues() {
+        long[] ring = null;
+        for (int i = 1; i <= 4; i++) {
+            ring = MapDbHistoryRing.add(ring, 4, i * 1000, i);
+        }
+
+        ring = MapDbHistoryRing.add(ring, 2, 5000, 5);
+
+        assertThat(values(ring, Long.MIN_VALUE, Long.MAX_VALUE), is(equalTo(List.of(4.0, 5.0))));
+    }
+
+    private List<Double> values(long[] ring, long from, long to) {
+        List<Double> values = new ArrayList<>();
+        MapDbHistoryRing.forEach(ring, from, to, (time, value) -> values.add(value));
+        return values;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.openhab.persistence.mapdb.internal.MapDbItem;
+import org.openhab.persistence.mapdb.internal.MapDbItemSerializer;
+import org.openhab.persistence.mapdb.internal.StateTypeAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class MapDbItemSerializerTest {
+    private final Logger logger = LoggerFactory.getLogger(MapDbItemSerializerTest.class);
+
+    MapDbItemSerializer serializer = new MapDbItemSerializer();
+    Gson mapper = new GsonBuilder().registerTypeHierarchyAdapter(State.class, new StateTypeAdapter()).create();
+
+    @Test
+    public void readWriteRoundtripShouldRecreateTheWrittenState() throws IOException {
+        assertThat(roundtrip(OnOffType.ON), is(equalTo(OnOffType.ON)));
+        assertThat(roundtrip(OpenClosedType.CLOSED), is(equalTo(OpenClosedType.CLOSED)));
+        assertThat(roundtrip(new DecimalType("-12.3450")), is(equalTo(new DecimalType("-12.3450"))));
+        assertThat(roundtrip(PercentType.HUNDRED), is(equalTo(PercentType.HUNDRED)));
+        assertThat(roundtrip(HSBType.GREEN), is(equalTo(HSBType.GREEN)));
+        assertThat(roundtrip(new QuantityType<>("21.5 °C")), is(equalTo(new QuantityType<>("21.5 °C"))));
+        assertThat(roundtrip(StringType.valueOf("test äöü")), is(equalTo(StringType.valueOf("test äöü"))));
+        DateTimeType dateTime = new DateTimeType(ZonedDateTime.parse("2020-05-01T12:34:56.789+02:00[Europe/Berlin]"));
+        assertThat(roundtrip(dateTime), is(equalTo(dateTime)));
+    }
+
+    @Test
+    public void readWriteRoundtripShouldRecreateNameAndTimestamp() throws IOException {
+        MapDbItem item = createItem("Temperature", new DecimalType(20));
+
+        MapDbItem result = deserialize(serialize(item));
+
+        assertThat(result.getName(), is(equalTo("Temperature")));
+        assertThat(result.getTimestamp(), is(equalTo(item.getTimestamp())));
+    }
+
+    @Test
+    public void binaryFormatShouldBeSmallerThanJson() throws IOException {
+        MapDbItem item = createItem("Temperature", new DecimalType("21.5"));
+
+        int binarySize = serialize(item).length;
+        int jsonSize = mapper.toJson(item).getBytes(StandardCharsets.UTF_8).length;
+
+        assertThat(binarySize, is(lessThan(jsonSize)));
+    }
+
+    /**
+     * Compares the speed of the binary format with the JSON format used before. It only logs the times, so it doesn't
+     * run with the build; remove the {@link Disabled} annotation to run it locally.
+     */
+    @Test
+    @Disabled("benchmark, run manually")
+    public void benchmarkAgainstJson() throws IOException {
+        MapDbItem item = createItem("Temperature", new DecimalType("21.5"));
+        int iterations = 100000;
+        // warm up both paths before measuring
+        for (int i = 0; i < iterations; i++) {
+            deserialize(serialize(item));
+            mapper.fromJson(mapper.toJson(item), MapDbItem.class);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            deserialize(serialize(item));
+        }
+        long binaryNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mapper.fromJson(mapper.toJson(item), MapDbItem.class);
+        }
+        long jsonNanos = System.nanoTime() - start;
+
+        logger.info("{} roundtrips took {} ms with the binary format and {} ms with JSON", iterations,
+                binaryNanos / 1000000, jsonNanos / 1000000);
+    }
+
+    private MapDbItem createItem(String name, State state) {
+        MapDbItem item = new MapDbItem();
+        item.setName(name);
+        item.setState(state);
+        item.setTimestamp(new Date(1588329296789L));
+        return item;
+    }
+
+    private State roundtrip(State state) throws IOException {
+        return deserialize(serialize(createItem("item", state))).getState();
+    }
+
+    private byte[] serialize(MapDbItem item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serializer.serialize(new DataOutputStream(bytes), item);
+        return bytes.toByteArray();
+    }
+
+    private MapDbItem deserialize(byte[] bytes) throws IOException {
+        return serializer.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mapdb;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.library.items.ColorItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+import org.openhab.persistence.mapdb.internal.MapDbPersistenceService;
+
+/**
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class MapDbPersistenceServiceTest {
+
+    private static @TempDir Path userData;
+
+    private MapDbPersistenceService service = new MapDbPersistenceService();
+
+    @BeforeAll
+    public static void setUserData() {
+        // the database folder is read when the service class is loaded, i.e. by the first test
+        System.setProperty("openhab.userdata", userData.toString());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        service.deactivate();
+        // each test starts with an empty database
+        try (Stream<Path> files = Files.list(userData.resolve("persistence").resolve("mapdb"))) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void statesOfAllKeyRangesShouldBeRestoredAfterRestart() {
+        // names before, between and after the boundaries of the key ranges read in parallel
+        List<String> names = List.of("Attic", "Door", "Kitchen", "Zone", "_hidden", "garden", "zone", "Übersicht");
+        service.activate(Map.of("readCache", "true"));
+        for (int i = 0; i < names.size(); i++) {
+            NumberItem item = new NumberItem(names.get(i));
+            item.setState(new DecimalType(i));
+            service.store(item);
+        }
+        service.deactivate();
+
+        service = new MapDbPersistenceService();
+        service.activate(Map.of("readCache", "true"));
+
+        for (int i = 0; i < names.size(); i++) {
+            assertThat(names.get(i), query(names.get(i)), is(equalTo(List.of(new DecimalType(i)))));
+        }
+        assertThat(service.getItemInfo().size(), is(names.size()));
+    }
+
+    @Test
+    public void historyOfPercentagesShouldKeepTheirScale() {
+        service.activate(Map.of("historySize", "10"));
+        DimmerItem dimmer = new DimmerItem("Dimmer");
+        dimmer.setState(new PercentType(30));
+        service.store(dimmer);
+        dimmer.setState(new PercentType(75));
+        service.store(dimmer);
+        ColorItem color = new ColorItem("Color");
+        color.setState(new HSBType(new DecimalType(120), new PercentType(100), new PercentType(40)));
+        service.store(color);
+
+        ZonedDateTime begin = ZonedDateTime.now().minusHours(1);
+        assertThat(query("Dimmer", begin), is(equalTo(List.of(new PercentType(30), new PercentType(75)))));
+        assertThat(query("Color", begin), is(equalTo(List.of(new PercentType(40)))));
+    }
+
+    private List<State> query(String itemName) {
+        return query(itemName, null);
+    }
+
+    private List<State> query(String itemName, @Nullable ZonedDateTime beginDate) {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setItemName(itemName);
+        filter.setBeginDate(beginDate);
+        List<State> states = new ArrayList<>();
+        for (HistoricItem item : service.query(filter)) {
+            states.add(item.getState());
+        }
+        return states;
+    }
+}
@@ -12,6 +12,7 @@
  */
 package org.openhab.persistence.mongodb.internal;
 
+import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -21,10 +22,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.ThreadPoolManager;
+import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
@@ -51,6 +57,7 @@ import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
@@ -59,29 +66,44 @@ import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
 
 /**
  * This is the implementation of the MongoDB {@link PersistenceService}.
  *
+ * Stores are queued and written in background by a {@link MongoDBWriteQueue}, with unordered bulk inserts.
+ *
  * @author Thorsten Hoeger - Initial contribution
  */
 @NonNullByDefault
 @Component(service = { PersistenceService.class,
-        QueryablePersistenceService.class }, configurationPid = "org.openhab.mongodb", configurationPolicy = ConfigurationPolicy.REQUIRE)
+        QueryablePersistenceService.class }, configurationPid = "org.openhab.mongodb", configurationPolicy = ConfigurationPolicy.REQUIRE, //
+        property = Constants.SERVICE_PID + "=org.openhab.mongodb")
+@ConfigurableService(category = "persistence", label = "MongoDB Persistence Service", description_uri = MongoDBPersistenceService.CONFIG_URI)
 public class MongoDBPersistenceService implements QueryablePersistenceService {
 
+    protected static final String CONFIG_URI = "persistence:mongodb";
+
     private static final String FIELD_ID = "_id";
     private static final String FIELD_ITEM = "item";
     private static final String FIELD_REALNAME = "realName";
     private static final String FIELD_TIMESTAMP = "timestamp";
     private static final String FIELD_VALUE = "value";
 
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_LINGER_TIME = 500;
+    private static final String DEFAULT_WRITE_CONCERN = "ACKNOWLEDGED";
+    // maximum number of documents waiting to be written, in batches
+    private static final int QUEUE_CAPACITY_BATCHES = 100;
+
     private final Logger logger = LoggerFactory.getLogger(MongoDBPersistenceService.class);
 
     private @NonNullByDefault({}) String url;
@@ -93,7 +115,11 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
     protected final ItemRegistry itemRegistry;
 
     private @NonNullByDefault({}) MongoClient cl;
-    private @NonNullByDefault({}) DBCollection mongoCollection;
+    private @NonNullByDefault({}) MongoCollection<Document> mongoCollection;
+    private WriteConcern writeConcern = WriteConcern.ACKNOWLEDGED;
+
+    private final ScheduledExecutorService scheduler = ThreadPoolManager.getScheduledPool(getClass().getSimpleName());
+    private @Nullable MongoDBWriteQueue writeQueue;
 
     @Activate
     public MongoDBPersistenceService(final @Reference ItemRegistry itemRegistry) {
@@ -122,16 +148,60 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return;
         }
 
+        int batchSize = getIntegerSetting(config, "batchSize", DEFAULT_BATCH_SIZE);
+        long lingerTime = getIntegerSetting(config, "lingerTime", DEFAULT_LINGER_TIME);
+        writeConcern = getWriteConcernSetting(config);
+        logger.debug("MongoDB batch size {}, linger time {} ms, write concern {}", batchSize, lingerTime,
+                writeConcern);
+
         disconnectFromDatabase();
         connectToDatabase();
 
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(this::write, scheduler, batchSize, lingerTime,
+                batchSize * QUEUE_CAPACITY_BATCHES);
+        queue.start();
+        writeQueue = queue;
+
         // connection has been established... initialization completed!
         initialized = true;
     }
 
+    private int getIntegerSetting(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", key, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    private WriteConcern getWriteConcernSetting(Map<String, Object> config) {
+        Object value = config.get("writeConcern");
+        String name = value == null ? "" : value.toString().trim().toUpperCase(Locale.ROOT);
+        if (name.isEmpty()) {
+            return WriteConcern.ACKNOWLEDGED;
+        }
+        // also accepts the deprecated names of the driver, like FSYNCED
+        WriteConcern writeConcern = WriteConcern.valueOf(name);
+        if (writeConcern == null) {
+            logger.warn("Ignoring unknown MongoDB write concern '{}', using {}", value, DEFAULT_WRITE_CONCERN);
+            return WriteConcern.ACKNOWLEDGED;
+        }
+        return writeConcern;
+    }
+
     @Deactivate
     public void deactivate(final int reason) {
         logger.debug("MongoDB persistence bundle stopping. Disconnecting from database.");
+        MongoDBWriteQueue queue = writeQueue;
+        if (queue != null) {
+            // write the documents still queued before disconnecting
+            queue.stop();
+            writeQueue = null;
+        }
         disconnectFromDatabase();
     }
 
@@ -175,15 +245,35 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         String name = (alias != null) ? alias : realName;
         Object value = this.convertValue(item.getState());
 
-        DBObject obj = new BasicDBObject();
+        Document obj = new Document();
         obj.put(FIELD_ID, new ObjectId());
         obj.put(FIELD_ITEM, name);
         obj.put(FIELD_REALNAME, realName);
         obj.put(FIELD_TIMESTAMP, new Date());
         obj.put(FIELD_VALUE, value);
-        this.mongoCollection.save(obj);
+        MongoDBWriteQueue queue = writeQueue;
+        if (queue != null && queue.offer(obj)) {
+            logger.debug("MongoDB queued {}={}", name, value);
+        }
+    }
 
-        logger.debug("MongoDB save {}={}", name, value);
+    /**
+     * Writes a batch of documents with an unordered bulk insert, so a failing document doesn't prevent the others
+     * from being written
+     */
+    private void write(List<Document> documents) {
+        MongoCollection<Document> collection = mongoCollection;
+        if (collection == null) {
+            logger.warn("mongodb: No connection to database. Cannot persist {} documents!", documents.size());
+            return;
+        }
+        try {
+            collection.insertMany(documents, new InsertManyOptions().ordered(false));
+            logger.debug("MongoDB saved {} documents", documents.size());
+        } catch (MongoBulkWriteException e) {
+            logger.warn("MongoDB could not save {} of {} documents: {}", e.getWriteErrors().size(), documents.size(),
+                    e.getMessage());
+        }
     }
 
     private Object convertValue(State state) {
@@ -229,11 +319,9 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         try {
             logger.debug("Connect MongoDB");
             this.cl = new MongoClient(new MongoClientURI(this.url));
-            mongoCollection = cl.getDB(this.db).getCollection(this.collection);
+            mongoCollection = cl.getDatabase(this.db).getCollection(this.collection).withWriteConcern(writeConcern);
 
-            BasicDBObject idx = new BasicDBObject();
-            idx.append(FIELD_TIMESTAMP, 1).append(FIELD_ITEM, 1);
-            this.mongoCollection.createIndex(idx);
+            this.mongoCollection.createIndex(Indexes.ascending(FIELD_TIMESTAMP, FIELD_ITEM));
             logger.debug("Connect MongoDB ... done");
         } catch (Exception e) {
             logger.error("Failed to connect to database {}", this.url);
@@ -270,45 +358,51 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         Item item = getItem(name);
 
         List<HistoricItem> items = new ArrayList<>();
-        DBObject query = new BasicDBObject();
+        List<Bson> conditions = new ArrayList<>();
         if (filter.getItemName() != null) {
-            query.put(FIELD_ITEM, filter.getItemName());
+            conditions.add(Filters.eq(FIELD_ITEM, filter.getItemName()));
         }
         if (filter.getState() != null && filter.getOperator() != null) {
             String op = convertOperator(filter.getOperator());
             Object value = convertValue(filter.getState());
-            query.put(FIELD_VALUE, new BasicDBObject(op, value));
+            conditions.add(new Document(FIELD_VALUE, new Document(op, value)));
         }
-        if (filter.getBeginDate() != null) {
-            query.put(FIELD_TIMESTAMP, new BasicDBObject("$gte", filter.getBeginDate()));
+        ZonedDateTime beginDate = filter.getBeginDate();
+        if (beginDate != null) {
+            conditions.add(Filters.gte(FIELD_TIMESTAMP, Date.from(beginDate.toInstant())));
         }
-        if (filter.getBeginDate() != null) {
-            query.put(FIELD_TIMESTAMP, new BasicDBObject("$lte", filter.getBeginDate()));
+        ZonedDateTime endDate = filter.getEndDate();
+        if (endDate != null) {
+            conditions.add(Filters.lte(FIELD_TIMESTAMP, Date.from(endDate.toInstant())));
         }
+        Bson query = conditions.isEmpty() ? new Document() : Filters.and(conditions);
 
-        Integer sortDir = (filter.getOrdering() == Ordering.ASCENDING) ? 1 : -1;
-        DBCursor cursor = this.mongoCollection.find(query).sort(new BasicDBObject(FIELD_TIMESTAMP, sortDir))
+        Bson sort = (filter.getOrdering() == Ordering.ASCENDING) ? Sorts.ascending(FIELD_TIMESTAMP)
+                : Sorts.descending(FIELD_TIMESTAMP);
+        Iterable<Document> documents = this.mongoCollection.find(query).sort(sort)
                 .skip(filter.getPageNumber() * filter.getPageSize()).limit(filter.getPageSize());
 
-        while (cursor.hasNext()) {
-            BasicDBObject obj = (BasicDBObject) cursor.next();
+        for (Document obj : documents) {
+            Object value = obj.get(FIELD_VALUE);
 
             final State state;
-            if (item instanceof NumberItem) {
-                state = new DecimalType(obj.getDouble(FIELD_VALUE));
-            } else if (item instanceof DimmerItem) {
-                state = new PercentType(obj.getInt(FIELD_VALUE));
+            if (item instanceof NumberItem || item instanceof DimmerItem || item instanceof RollershutterItem) {
+                Number number = toNumber(value);
+                if (number == null) {
+                    logger.debug("Ignoring value '{}' of item '{}' which isn't a number", value, name);
+                    continue;
+                }
+                state = item instanceof NumberItem ? new DecimalType(number.doubleValue())
+                        : new PercentType(number.intValue());
             } else if (item instanceof SwitchItem) {
-                state = OnOffType.valueOf(obj.getString(FIELD_VALUE));
+                state = OnOffType.valueOf(String.valueOf(value));
             } else if (item instanceof ContactItem) {
-                state = OpenClosedType.valueOf(obj.getString(FIELD_VALUE));
-            } else if (item instanceof RollershutterItem) {
-                state = new PercentType(obj.getInt(FIELD_VALUE));
+                state = OpenClosedType.valueOf(String.valueOf(value));
             } else if (item instanceof DateTimeItem) {
                 state = new DateTimeType(
-                        ZonedDateTime.ofInstant(obj.getDate(FIELD_VALUE).toInstant(), ZoneId.systemDefault()));
+                        ZonedDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()));
             } else {
-                state = new StringType(obj.getString(FIELD_VALUE));
+                state = new StringType(String.valueOf(value));
             }
 
             items.add(new MongoDBItem(name, state,
@@ -318,6 +412,22 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         return items;
     }
 
+    /**
+     * Returns the number of a stored value, which is a string if it has been written as such, e.g. by another client
+     */
+    private @Nullable Number toNumber(@Nullable Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        } else if (value != null) {
+            try {
+                return new BigDecimal(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     private @Nullable String convertOperator(Operator operator) {
         switch (operator) {
             case EQ:
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue of documents written to MongoDB in background, in batches.
+ *
+ * Documents are written once a batch is full, or at the latest after the linger time, so a single round-trip writes
+ * all documents received meanwhile. The queue is bounded, documents received while it's full are dropped instead of
+ * blocking the caller.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class MongoDBWriteQueue {
+
+    /**
+     * Writes a batch of documents to the database
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(List<Document> documents);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(MongoDBWriteQueue.class);
+
+    private final BlockingQueue<Document> queue;
+    private final BatchWriter writer;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final long lingerMillis;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong droppedDocuments = new AtomicLong();
+    private @Nullable ScheduledFuture<?> flushJob;
+
+    /**
+     * @param writer writes the batches of documents
+     * @param scheduler runs the writes
+     * @param batchSize maximum number of documents written at once
+     * @param lingerMillis maximum time in milliseconds a document waits to be written
+     * @param capacity maximum number of documents waiting to be written
+     */
+    public MongoDBWriteQueue(BatchWriter writer, ScheduledExecutorService scheduler, int batchSize,
+            long lingerMillis, int capacity) {
+        this.writer = writer;
+        this.scheduler = scheduler;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = Math.max(1, lingerMillis);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, capacity));
+    }
+
+    public synchronized void start() {
+        if (flushJob == null) {
+            flushJob = scheduler.scheduleWithFixedDelay(this::flush, lingerMillis, lingerMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops writing in background, and writes the documents still queued.
+     */
+    public void stop() {
+        synchronized (this) {
+            ScheduledFuture<?> job = flushJob;
+            if (job != null) {
+                job.cancel(false);
+                flushJob = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Queues a document to be written.
+     *
+     * @param document the document
+     * @return false if the document has been dropped, because the queue is full
+     */
+    public boolean offer(Document document) {
+        if (!queue.offer(document)) {
+            if (droppedDocuments.getAndIncrement() % batchSize == 0) {
+                logger.warn("MongoDB write queue is full, dropped {} documents so far", droppedDocuments.get());
+            }
+            return false;
+        }
+        if (queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            // a full batch is written right away
+            try {
+                scheduler.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes all queued documents.
+     */
+    public synchronized void flush() {
+        flushScheduled.set(false);
+        List<Document> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            try {
+                writer.write(batch);
+            } catch (RuntimeException e) {
+                // not retried, a database which can't be reached would fill the queue
+                logger.warn("Could not write {} documents to MongoDB, they are dropped: {}", batch.size(),
+                        e.getMessage());
+            }
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    /**
+     * Returns the number of documents waiting to be written.
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of documents dropped because the queue was full.
+     */
+    public long getDroppedDocuments() {
+        return droppedDocuments.get();
+    }
+}
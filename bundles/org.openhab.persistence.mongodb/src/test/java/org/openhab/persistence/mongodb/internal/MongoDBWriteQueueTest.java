@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class MongoDBWriteQueueTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<Document>> batches = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void documentsAreWrittenOnceTheLingerTimeIsOver() throws InterruptedException {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(batches::add, scheduler, 10, 50, 100);
+        queue.start();
+
+        queue.offer(document(1));
+        queue.offer(document(2));
+        waitForBatches(1);
+
+        assertThat(batches.get(0), contains(document(1), document(2)));
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void fullBatchIsWrittenRightAway() throws InterruptedException {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(batches::add, scheduler, 2, 60_000, 100);
+        queue.start();
+
+        queue.offer(document(1));
+        queue.offer(document(2));
+        waitForBatches(1);
+
+        assertThat(batches.get(0), contains(document(1), document(2)));
+    }
+
+    @Test
+    public void documentsAreDroppedWhileTheQueueIsFull() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(documents -> {
+            writing.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batches.add(documents);
+        }, scheduler, 2, 60_000, 2);
+        queue.start();
+
+        // the first batch is being written while the next one fills the queue
+        queue.offer(document(1));
+        queue.offer(document(2));
+        assertThat(writing.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(queue.offer(document(3)), is(true));
+        assertThat(queue.offer(document(4)), is(true));
+        assertThat(queue.offer(document(5)), is(false));
+        assertThat(queue.getDroppedDocuments(), is(1L));
+
+        release.countDown();
+        queue.stop();
+
+        assertThat(batches, contains(List.of(document(1), document(2)), List.of(document(3), document(4))));
+    }
+
+    @Test
+    public void stopWritesTheQueuedDocuments() {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(batches::add, scheduler, 10, 60_000, 100);
+        queue.start();
+        queue.offer(document(1));
+        queue.offer(document(2));
+
+        queue.stop();
+
+        assertThat(batches, contains(List.of(document(1), document(2))));
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void failedBatchIsDroppedAndDoesNotStopTheQueue() {
+        MongoDBWriteQueue queue = new MongoDBWriteQueue(documents -> {
+            if (documents.contains(document(1))) {
+                throw new IllegalStateException("database not reachable");
+            }
+            batches.add(documents);
+        }, scheduler, 1, 60_000, 100);
+        queue.offer(document(1));
+        queue.offer(document(2));
+
+        queue.flush();
+
+        assertThat(batches, contains(List.of(document(2))));
+    }
+
+    private static Document document(int value) {
+        return new Document("value", value);
+    }
+
+    private void waitForBatches(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while (batches.size() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertThat(batches, hasSize(count));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdMemoryBackendFactory;
+import org.rrd4j.core.RrdNioBackendFactory;
+import org.rrd4j.core.RrdRandomAccessFileBackendFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens and closes rrd4j databases using the configured storage backend:
+ * <ul>
+ * <li>FILE: each update is written to the file</li>
+ * <li>NIO: the file is memory mapped and written to disk every sync interval</li>
+ * <li>MEMORY: the database is loaded in memory and only written to the file when it's closed, or every sync
+ * interval with {@link #sync(RrdDb)}</li>
+ * </ul>
+ *
+ * The factory must be closed with {@link #close()} when it's no longer used.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jBackendFactory {
+
+    public enum Backend {
+        FILE,
+        NIO,
+        MEMORY
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jBackendFactory.class);
+
+    private final Backend backend;
+    private final RrdBackendFactory fileFactory;
+    private final RrdBackendFactory factory;
+
+    /**
+     * @param backend the storage backend
+     * @param syncInterval the interval in seconds between writes of memory mapped files to disk
+     */
+    public RRD4jBackendFactory(Backend backend, int syncInterval) {
+        this.backend = backend;
+        this.fileFactory = new RrdRandomAccessFileBackendFactory();
+        switch (backend) {
+            case NIO:
+                factory = new RrdNioBackendFactory(syncInterval);
+                break;
+            case MEMORY:
+                factory = new RrdMemoryBackendFactory();
+                break;
+            default:
+                factory = fileFactory;
+                break;
+        }
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Returns the database of the given file, creating the file if it doesn't exist.
+     *
+     * @param path the path of the database file
+     * @param rrdDefSupplier provides the definition used to create the database if the file doesn't exist
+     * @throws IOException if the database can't be opened or created
+     */
+    public RrdDb open(String path, Supplier<RrdDef> rrdDefSupplier) throws IOException {
+        File file = new File(path);
+        if (!file.exists()) {
+            File folder = file.getParentFile();
+            if (folder != null && !folder.exists()) {
+                folder.mkdirs();
+            }
+            // create a new database file
+            RrdDb db = new RrdDb(rrdDefSupplier.get(), fileFactory);
+            if (backend == Backend.FILE) {
+                return db;
+            }
+            db.close();
+        }
+        if (backend == Backend.MEMORY) {
+            RrdDb fileDb = new RrdDb(path, fileFactory);
+            try {
+                RrdDb db = new RrdDb(fileDb.getRrdDef(), factory);
+                fileDb.copyStateTo(db);
+                return db;
+            } finally {
+                fileDb.close();
+            }
+        }
+        // recreate the RrdDb instance from the file
+        return new RrdDb(path, factory);
+    }
+
+    /**
+     * Writes the content of a database loaded in memory to its file, doing nothing for other backends.
+     *
+     * @param db the database to write
+     * @throws IOException if the file can't be written
+     */
+    public void sync(RrdDb db) throws IOException {
+        if (backend != Backend.MEMORY) {
+            return;
+        }
+        RrdDef rrdDef = db.getRrdDef();
+        Path path = Paths.get(rrdDef.getPath());
+        Path tempPath = Paths.get(rrdDef.getPath() + ".tmp");
+        // write a copy and replace the file, so it isn't left corrupted if openHAB stops while writing
+        rrdDef.setPath(tempPath.toString());
+        RrdDb fileDb = new RrdDb(rrdDef, fileFactory);
+        try {
+            db.copyStateTo(fileDb);
+        } finally {
+            fileDb.close();
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.trace("Written rrd4j database '{}' to disk", path);
+    }
+
+    /**
+     * Releases the resources of the backend, like the thread writing memory mapped files to disk.
+     */
+    public void close() {
+        if (factory instanceof Closeable) {
+            try {
+                ((Closeable) factory).close();
+            } catch (IOException e) {
+                logger.debug("Error closing rrd4j {} backend: {}", backend, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the database, writing it to its file first if it's loaded in memory.
+     *
+     * @param db the database to close
+     * @throws IOException if the database can't be written or closed
+     */
+    public void close(RrdDb db) throws IOException {
+        try {
+            sync(db);
+        } finally {
+            db.close();
+        }
+    }
+}
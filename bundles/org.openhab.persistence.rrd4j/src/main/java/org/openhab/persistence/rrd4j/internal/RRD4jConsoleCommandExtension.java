@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.io.console.Console;
+import org.openhab.core.io.console.extensions.AbstractConsoleCommandExtension;
+import org.openhab.core.io.console.extensions.ConsoleCommandExtension;
+import org.openhab.core.persistence.ModifiablePersistenceService;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.PersistenceServiceRegistry;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Console commands migrating the history of items between rrd4j and other persistence services.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+@Component(service = ConsoleCommandExtension.class)
+public class RRD4jConsoleCommandExtension extends AbstractConsoleCommandExtension {
+
+    private static final String SUBCMD_EXPORT = "export";
+    private static final String SUBCMD_IMPORT = "import";
+
+    // number of items migrated at the same time
+    private static final int PARALLELISM = 4;
+
+    private final PersistenceServiceRegistry persistenceServiceRegistry;
+
+    @Activate
+    public RRD4jConsoleCommandExtension(final @Reference PersistenceServiceRegistry persistenceServiceRegistry) {
+        super("rrd4j", "Migrate the history of items between rrd4j and other persistence services.");
+        this.persistenceServiceRegistry = persistenceServiceRegistry;
+    }
+
+    @Override
+    public void execute(String[] args, Console console) {
+        if (args.length < 2) {
+            printUsage(console);
+            return;
+        }
+        PersistenceService rrd4jService = persistenceServiceRegistry.get("rrd4j");
+        if (!(rrd4jService instanceof RRD4jPersistenceService)) {
+            console.println("The rrd4j persistence service is not available.");
+            return;
+        }
+        PersistenceService service = persistenceServiceRegistry.get(args[1]);
+        if (service == null || service == rrd4jService) {
+            console.println("Unknown persistence service '" + args[1] + "'.");
+            return;
+        }
+        RRD4jMigrator migrator = new RRD4jMigrator((RRD4jPersistenceService) rrd4jService, PARALLELISM);
+        long start = System.currentTimeMillis();
+        long count;
+        switch (args[0]) {
+            case SUBCMD_EXPORT:
+                if (!(service instanceof ModifiablePersistenceService)) {
+                    console.println("Persistence service '" + args[1] + "' does not support storing past values.");
+                    return;
+                }
+                count = migrator.exportTo((ModifiablePersistenceService) service,
+                        Arrays.asList(args).subList(2, args.length), console::println);
+                break;
+            case SUBCMD_IMPORT:
+                if (!(service instanceof QueryablePersistenceService) || args.length < 4) {
+                    printUsage(console);
+                    return;
+                }
+                ZonedDateTime begin;
+                try {
+                    begin = LocalDate.parse(args[2]).atStartOfDay(ZoneId.systemDefault());
+                } catch (DateTimeParseException e) {
+                    console.println("Invalid date '" + args[2] + "', expected yyyy-MM-dd.");
+                    return;
+                }
+                count = migrator.importFrom((QueryablePersistenceService) service, begin,
+                        Arrays.asList(args).subList(3, args.length), console::println);
+                break;
+            default:
+                printUsage(console);
+                return;
+        }
+        console.println("Migrated " + count + " values in " + (System.currentTimeMillis() - start) / 1000 + " s.");
+    }
+
+    @Override
+    public List<String> getUsages() {
+        return List.of(
+                buildCommandUsage(SUBCMD_EXPORT + " <service> [<item>...]",
+                        "stores the history of the given items, or of all items, in another persistence service"),
+                buildCommandUsage(SUBCMD_IMPORT + " <service> <yyyy-MM-dd> <item>...",
+                        "replaces the rrd4j databases of the given items with the history since the given date "
+                                + "from another persistence service"));
+    }
+}
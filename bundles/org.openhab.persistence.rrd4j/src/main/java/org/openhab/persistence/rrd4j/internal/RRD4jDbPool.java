@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps rrd4j databases open so they can be reused by consecutive stores and queries, instead of opening and reading
+ * the file header each time.
+ *
+ * Every {@link #acquire(String, Supplier)} must be followed by a {@link #release(RrdDb)}. A database is only closed
+ * when nobody is using it, either because it has been idle longer than the idle timeout or because the maximum number
+ * of open databases has been reached, in which case the least recently used one is closed. Databases are opened and
+ * closed with the configured {@link RRD4jBackendFactory}.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jDbPool {
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jDbPool.class);
+
+    private static class PoolEntry {
+        private final RrdDb db;
+        private int references;
+        private long lastAccess;
+
+        private PoolEntry(RrdDb db) {
+            this.db = db;
+        }
+    }
+
+    // access ordered, so the first entries are the least recently used
+    private final Map<String, PoolEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<RrdDb, PoolEntry> entriesByDb = new HashMap<>();
+    private final RRD4jBackendFactory backendFactory;
+    private final int capacity;
+    private final long idleTimeoutMillis;
+
+    /**
+     * @param backendFactory opens and closes the databases
+     * @param capacity maximum number of databases kept open when they are not in use
+     * @param idleTimeoutMillis time after which a database which is not used is closed
+     */
+    public RRD4jDbPool(RRD4jBackendFactory backendFactory, int capacity, long idleTimeoutMillis) {
+        this.backendFactory = backendFactory;
+        this.capacity = capacity;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Returns the open database of the given file, opening it if needed.
+     *
+     * @param path the path of the database file
+     * @param rrdDefSupplier provides the definition used to create the database if the file doesn't exist
+     * @return the database, which must be returned with {@link #release(RrdDb)}
+     * @throws IOException if the database can't be opened or created
+     */
+    public synchronized RrdDb acquire(String path, Supplier<RrdDef> rrdDefSupplier) throws IOException {
+        PoolEntry entry = entries.get(path);
+        if (entry == null) {
+            entry = new PoolEntry(backendFactory.open(path, rrdDefSupplier));
+            entries.put(path, entry);
+            entriesByDb.put(entry.db, entry);
+        }
+        entry.references++;
+        entry.lastAccess = System.currentTimeMillis();
+        // only once it's referenced, so the database just opened isn't closed right away
+        evictExceedingEntries();
+        return entry.db;
+    }
+
+    /**
+     * Returns a database obtained with {@link #acquire(String, Supplier)} to the pool.
+     *
+     * @param db the database to release
+     */
+    public synchronized void release(RrdDb db) {
+        PoolEntry entry = entriesByDb.get(db);
+        if (entry == null) {
+            logger.debug("Releasing rrd4j database '{}' which isn't in the pool", db.getPath());
+            closeQuietly(db);
+            return;
+        }
+        entry.references--;
+        entry.lastAccess = System.currentTimeMillis();
+        evictExceedingEntries();
+    }
+
+    /**
+     * Closes the database of the given file, so the file can be replaced.
+     *
+     * @param path the path of the database file
+     * @throws IOException if the database is in use or can't be closed
+     */
+    public synchronized void invalidate(String path) throws IOException {
+        PoolEntry entry = entries.get(path);
+        if (entry != null) {
+            if (entry.references > 0) {
+                throw new IOException("Database '" + path + "' is in use");
+            }
+            entries.remove(path);
+            entriesByDb.remove(entry.db);
+            backendFactory.close(entry.db);
+        }
+    }
+
+    /**
+     * Closes all databases which have not been used during the idle timeout.
+     */
+    public synchronized void evictIdle() {
+        long limit = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Iterator<PoolEntry> it = entries.values().iterator(); it.hasNext();) {
+            PoolEntry entry = it.next();
+            if (entry.references <= 0 && entry.lastAccess < limit) {
+                it.remove();
+                entriesByDb.remove(entry.db);
+                closeQuietly(entry.db);
+            }
+        }
+    }
+
+    /**
+     * Writes all open databases to disk, see {@link RRD4jBackendFactory#sync(RrdDb)}.
+     */
+    public void sync() {
+        List<RrdDb> dbs = new ArrayList<>();
+        synchronized (this) {
+            for (PoolEntry entry : entries.values()) {
+                // keep them referenced, so they aren't closed while they are written
+                entry.references++;
+                dbs.add(entry.db);
+            }
+        }
+        for (RrdDb db : dbs) {
+            try {
+                backendFactory.sync(db);
+            } catch (IOException e) {
+                logger.warn("Could not write rrd4j database '{}' to disk: {}", db.getPath(), e.getMessage());
+            } finally {
+                release(db);
+            }
+        }
+    }
+
+    /**
+     * Writes the database of the given file to disk if it's open, so the file can be read directly, see
+     * {@link RRD4jBackendFactory#sync(RrdDb)}.
+     *
+     * @param path the path of the database file
+     */
+    public void sync(String path) {
+        RrdDb db;
+        synchronized (this) {
+            PoolEntry entry = entries.get(path);
+            if (entry == null) {
+                return;
+            }
+            // keep it referenced, so it isn't closed while it's written
+            entry.references++;
+            db = entry.db;
+        }
+        try {
+            backendFactory.sync(db);
+        } catch (IOException e) {
+            logger.warn("Could not write rrd4j database '{}' to disk: {}", path, e.getMessage());
+        } finally {
+            release(db);
+        }
+    }
+
+    /**
+     * Closes all databases, also those still in use, and the backend factory.
+     */
+    public synchronized void close() {
+        for (PoolEntry entry : entries.values()) {
+            if (entry.references > 0) {
+                logger.debug("Closing rrd4j database '{}' which is still in use", entry.db.getPath());
+            }
+            closeQuietly(entry.db);
+        }
+        entries.clear();
+        entriesByDb.clear();
+        backendFactory.close();
+    }
+
+    /**
+     * Returns the number of open databases.
+     */
+    public synchronized int getOpenCount() {
+        return entries.size();
+    }
+
+    private void evictExceedingEntries() {
+        int exceeding = entries.size() - capacity;
+        for (Iterator<PoolEntry> it = entries.values().iterator(); exceeding > 0 && it.hasNext();) {
+            PoolEntry entry = it.next();
+            if (entry.references <= 0) {
+                it.remove();
+                entriesByDb.remove(entry.db);
+                closeQuietly(entry.db);
+                exceeding--;
+            }
+        }
+    }
+
+    private void closeQuietly(@Nullable RrdDb db) {
+        if (db != null) {
+            try {
+                backendFactory.close(db);
+            } catch (IOException e) {
+                logger.debug("Error closing rrd4j database: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.persistence.PersistenceItemInfo;
+import org.rrd4j.core.Archive;
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory index of the rrd4j databases, used to return the persisted items without opening their files.
+ *
+ * The index is filled by scanning the database folder once, and kept up to date with each update.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jItemIndex {
+
+    private static final String DB_SUFFIX = ".rrd";
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jItemIndex.class);
+
+    private final Map<String, RRD4jItemInfo> itemInfos = new ConcurrentHashMap<>();
+
+    /**
+     * Reads the time range of the values of all databases in the given folder, in parallel.
+     *
+     * @param folder the folder containing the database files
+     * @param beforeRead called with the path of each file before it's read, to write the open database to disk
+     */
+    public void scan(String folder, Consumer<String> beforeRead) {
+        Path path = Paths.get(folder);
+        if (!Files.isDirectory(path)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(path)) {
+            files = stream.filter(file -> file.getFileName().toString().endsWith(DB_SUFFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.warn("Could not list rrd4j databases in '{}': {}", folder, e.getMessage());
+            return;
+        }
+        files.parallelStream().forEach(file -> {
+            beforeRead.accept(file.toAbsolutePath().toString());
+            scan(file);
+        });
+        logger.debug("Indexed {} rrd4j databases in {} ms", files.size(), System.currentTimeMillis() - start);
+    }
+
+    private void scan(Path file) {
+        String fileName = file.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - DB_SUFFIX.length());
+        try {
+            RrdDb db = new RrdDb(file.toString(), true);
+            try {
+                RRD4jItemInfo itemInfo = readItemInfo(name, db);
+                if (itemInfo != null) {
+                    itemInfos.merge(name, itemInfo, RRD4jItemIndex::merge);
+                }
+            } finally {
+                db.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Could not read rrd4j database '{}': {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Updates the index after a database has been updated.
+     *
+     * @param name the name of the database
+     * @param db the updated database
+     * @param time the time in seconds of the update
+     */
+    public void updated(String name, RrdDb db, long time) {
+        RRD4jItemInfo itemInfo = itemInfos.get(name);
+        if (itemInfo == null) {
+            // it has just been created, or its file hasn't been scanned yet
+            itemInfo = readItemInfo(name, db);
+            if (itemInfo == null) {
+                return;
+            }
+        }
+        if (itemInfo.getLatestSeconds() < time || itemInfo.getEarliestSeconds() > time) {
+            itemInfo = new RRD4jItemInfo(name, Math.min(itemInfo.getEarliestSeconds(), time),
+                    Math.max(itemInfo.getLatestSeconds(), time));
+        }
+        itemInfos.merge(name, itemInfo, RRD4jItemIndex::merge);
+    }
+
+    /**
+     * Reads the time range of a database again, after its file has been replaced.
+     *
+     * @param name the name of the database
+     * @param file the database file
+     */
+    public void reindex(String name, Path file) {
+        itemInfos.remove(name);
+        scan(file);
+    }
+
+    /**
+     * Returns the information of all indexed databases.
+     */
+    public Set<PersistenceItemInfo> getItemInfo() {
+        return Set.copyOf(itemInfos.values());
+    }
+
+    private @Nullable RRD4jItemInfo readItemInfo(String name, RrdDb db) {
+        try {
+            long latest = db.getLastUpdateTime();
+            // archives start long before the first update, so the earliest value is the first row with a value
+            long earliest = RRD4jItemInfo.UNKNOWN;
+            int dsIndex = db.getDsIndex(RRD4jPersistenceService.DATASOURCE_STATE);
+            for (int i = 0; i < db.getArcCount(); i++) {
+                Archive archive = db.getArchive(i);
+                double[] values = archive.getRobin(dsIndex).getValues();
+                for (int row = 0; row < values.length; row++) {
+                    if (!Double.isNaN(values[row])) {
+                        earliest = Math.min(earliest, archive.getStartTime() + row * archive.getArcStep());
+                        break;
+                    }
+                }
+            }
+            return new RRD4jItemInfo(name, earliest, latest);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Could not read time range of rrd4j database '{}': {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    private static RRD4jItemInfo merge(RRD4jItemInfo info1, RRD4jItemInfo info2) {
+        return new RRD4jItemInfo(info1.getName(), Math.min(info1.getEarliestSeconds(), info2.getEarliestSeconds()),
+                Math.max(info1.getLatestSeconds(), info2.getLatestSeconds()));
+    }
+}
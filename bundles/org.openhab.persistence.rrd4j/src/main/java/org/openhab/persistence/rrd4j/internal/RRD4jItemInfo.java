@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.util.Date;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.persistence.PersistenceItemInfo;
+
+/**
+ * This is a Java bean used to return information about items stored in rrd4j databases.
+ *
+ * As older values are consolidated, the number of stored values isn't known and isn't returned.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jItemInfo implements PersistenceItemInfo {
+
+    // the earliest time isn't known while no value has been stored
+    static final long UNKNOWN = Long.MAX_VALUE;
+
+    private final String name;
+    private final long earliest;
+    private final long latest;
+
+    /**
+     * @param name the name of the database
+     * @param earliest the time in seconds of the oldest value in the database, or {@link #UNKNOWN}
+     * @param latest the time in seconds of the last update
+     */
+    public RRD4jItemInfo(String name, long earliest, long latest) {
+        this.name = name;
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public @Nullable Integer getCount() {
+        return null;
+    }
+
+    @Override
+    public @Nullable Date getEarliest() {
+        return earliest == UNKNOWN ? null : new Date(earliest * 1000);
+    }
+
+    @Override
+    public @Nullable Date getLatest() {
+        return new Date(latest * 1000);
+    }
+
+    long getEarliestSeconds() {
+        return earliest;
+    }
+
+    long getLatestSeconds() {
+        return latest;
+    }
+}
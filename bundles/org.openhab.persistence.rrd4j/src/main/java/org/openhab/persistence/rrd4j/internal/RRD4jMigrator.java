@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.ModifiablePersistenceService;
+import org.openhab.core.persistence.PersistenceItemInfo;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.Archive;
+import org.rrd4j.core.FetchData;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.Sample;
+
+/**
+ * Migrates the history of items between rrd4j and other persistence services.
+ *
+ * Exports read all archives of the item databases, each archive only for the time not covered by a finer one, and
+ * store the values in a {@link ModifiablePersistenceService}. Imports query the values of another
+ * {@link QueryablePersistenceService} page by page, and write them to a new database which replaces the database of
+ * the item. Items are migrated in parallel, and progress is reported after each batch and each item.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jMigrator {
+
+    // number of rows read from an archive, resp. values queried from a service, at once
+    private static final int BATCH_SIZE = 5000;
+
+    private final RRD4jPersistenceService rrd4jService;
+    private final int parallelism;
+
+    /**
+     * @param rrd4jService the rrd4j persistence service
+     * @param parallelism the number of items migrated at the same time
+     */
+    public RRD4jMigrator(RRD4jPersistenceService rrd4jService, int parallelism) {
+        this.rrd4jService = rrd4jService;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Stores the values of the rrd4j databases of the given items in another service.
+     *
+     * @param target the service to store the values in
+     * @param itemNames the items to export, all items with a database if empty
+     * @param progress receives a message after each batch and each item
+     * @return the number of exported values
+     */
+    public long exportTo(ModifiablePersistenceService target, List<String> itemNames, Consumer<String> progress) {
+        List<String> names = itemNames;
+        if (names.isEmpty()) {
+            names = new ArrayList<>();
+            for (PersistenceItemInfo itemInfo : rrd4jService.getItemInfo()) {
+                names.add(itemInfo.getName());
+            }
+            names.sort(null);
+        }
+        return migrate(names, (name, batchDone) -> exportItem(name, target, batchDone), progress);
+    }
+
+    /**
+     * Replaces the rrd4j databases of the given items with the values queried from another service.
+     *
+     * @param source the service to query the values from
+     * @param begin the time of the first value to import
+     * @param itemNames the items to import
+     * @param progress receives a message after each batch and each item
+     * @return the number of imported values
+     */
+    public long importFrom(QueryablePersistenceService source, ZonedDateTime begin, List<String> itemNames,
+            Consumer<String> progress) {
+        return migrate(itemNames, (name, batchDone) -> importItem(name, source, begin, batchDone), progress);
+    }
+
+    @FunctionalInterface
+    private interface ItemMigration {
+        /**
+         * @param name the item to migrate
+         * @param batchDone receives the number of values migrated so far after each batch
+         * @return the number of migrated values
+         */
+        long migrate(String name, LongConsumer batchDone) throws IOException;
+    }
+
+    private long migrate(List<String> names, ItemMigration migration, Consumer<String> progress) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                new NamedThreadFactory("RRD4jMigration"));
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong values = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (String name : names) {
+                futures.add(executor.submit(() -> {
+                    String message;
+                    try {
+                        long count = migration.migrate(name,
+                                migrated -> report(progress, name + ": " + migrated + " values so far"));
+                        values.addAndGet(count);
+                        message = name + ": " + count + " values";
+                    } catch (IOException | RuntimeException e) {
+                        message = name + ": failed, " + e.getMessage();
+                    }
+                    report(progress, "[" + done.incrementAndGet() + "/" + names.size() + "] " + message);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // exceptions are reported by the tasks
+        } finally {
+            executor.shutdownNow();
+        }
+        return values.get();
+    }
+
+    private static void report(Consumer<String> progress, String message) {
+        synchronized (progress) {
+            progress.accept(message);
+        }
+    }
+
+    private long exportItem(String name, ModifiablePersistenceService target, LongConsumer batchDone)
+            throws IOException {
+        Item item = rrd4jService.getItem(name);
+        if (item == null) {
+            throw new IOException("item not found");
+        }
+        // updates still queued are exported too
+        rrd4jService.syncDB(name);
+        RrdDb db = rrd4jService.getDB(name);
+        if (db == null) {
+            throw new IOException("database could not be opened");
+        }
+        try {
+            List<Archive> archives = new ArrayList<>();
+            for (int i = 0; i < db.getArcCount(); i++) {
+                archives.add(db.getArchive(i));
+            }
+            archives.sort(Comparator.comparingLong(RRD4jMigrator::getArcStep));
+
+            // the time range of each archive not covered by a finer one, from the finest to the coarsest archive
+            List<long[]> ranges = new ArrayList<>();
+            long covered = Long.MAX_VALUE;
+            for (Archive archive : archives) {
+                long start = archive.getStartTime();
+                long end = Math.min(archive.getEndTime(), covered - 1);
+                ranges.add(new long[] { start, end });
+                covered = Math.min(covered, start);
+            }
+
+            // the values are stored in chronological order, from the coarsest to the finest archive
+            long count = 0;
+            for (int i = archives.size() - 1; i >= 0; i--) {
+                Archive archive = archives.get(i);
+                ConsolFun consolFun = archive.getConsolFun();
+                long step = archive.getArcStep();
+                long end = ranges.get(i)[1];
+                for (long start = ranges.get(i)[0]; start <= end; start += step * BATCH_SIZE) {
+                    long batchEnd = Math.min(end, start + step * (BATCH_SIZE - 1));
+                    FetchData data = db.createFetchRequest(consolFun, start, batchEnd, step).fetchData();
+                    long[] timestamps = data.getTimestamps();
+                    double[] values = data.getValues(RRD4jPersistenceService.DATASOURCE_STATE);
+                    // the target service has no batch store, so the values of a batch are stored one by one
+                    for (int row = 0; row < timestamps.length; row++) {
+                        if (!Double.isNaN(values[row]) && timestamps[row] >= start && timestamps[row] <= batchEnd) {
+                            target.store(item, new Date(timestamps[row] * 1000),
+                                    rrd4jService.mapToState(values[row], item));
+                            count++;
+                        }
+                    }
+                    batchDone.accept(count);
+                }
+            }
+            return count;
+        } finally {
+            rrd4jService.releaseDB(db);
+        }
+    }
+
+    private long importItem(String name, QueryablePersistenceService source, ZonedDateTime begin,
+            LongConsumer batchDone) throws IOException {
+        // the default definitions depend on the type of the item
+        if (rrd4jService.getItem(name) == null) {
+            throw new IOException("item not found");
+        }
+        File file = new File(RRD4jPersistenceService.DB_FOLDER + File.separator + name + ".rrd.import");
+        RrdDef rrdDef = rrd4jService.getRrdDef(name, file);
+        if (rrdDef.getDsCount() == 0) {
+            throw new IOException("no database definition");
+        }
+        // as when storing, the last value is stored again before a new one, so it doesn't get interpolated
+        boolean storeLastValueAgain = rrdDef.getArcDefs()[0].getConsolFun() != ConsolFun.AVERAGE;
+        boolean counter = rrdDef.getDsDefs()[0].getDsType() == DsType.COUNTER;
+
+        RrdDb db = null;
+        long count = 0;
+        long lastTime = 0;
+        double lastValue = Double.NaN;
+        try {
+            FilterCriteria filter = new FilterCriteria();
+            filter.setItemName(name);
+            filter.setBeginDate(begin);
+            filter.setEndDate(ZonedDateTime.now());
+            filter.setOrdering(Ordering.ASCENDING);
+            filter.setPageSize(BATCH_SIZE);
+            for (int page = 0;; page++) {
+                filter.setPageNumber(page);
+                int pageCount = 0;
+                for (HistoricItem historicItem : source.query(filter)) {
+                    pageCount++;
+                    DecimalType state = historicItem.getState().as(DecimalType.class);
+                    long time = historicItem.getTimestamp().toEpochSecond();
+                    if (state == null || time <= lastTime) {
+                        // rrd4j needs at least one second between values
+                        continue;
+                    }
+                    if (db == null) {
+                        // the database must start before the first value
+                        rrdDef.setStartTime(time - 2);
+                        db = new RrdDb(rrdDef);
+                    }
+                    Sample sample = db.createSample();
+                    if (storeLastValueAgain && !Double.isNaN(lastValue) && time - 1 > lastTime) {
+                        sample.setTime(time - 1);
+                        sample.setValue(RRD4jPersistenceService.DATASOURCE_STATE, lastValue);
+                        sample.update();
+                    }
+                    double value = state.toBigDecimal().doubleValue();
+                    if (counter) {
+                        value = value * rrdDef.getStep();
+                    }
+                    sample.setTime(time);
+                    sample.setValue(RRD4jPersistenceService.DATASOURCE_STATE, value);
+                    sample.update();
+                    lastTime = time;
+                    lastValue = value;
+                    count++;
+                }
+                batchDone.accept(count);
+                if (pageCount < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(db);
+            file.delete();
+            throw e;
+        }
+        if (db == null) {
+            // nothing to import, the database is kept
+            return 0;
+        }
+        db.close();
+        rrd4jService.replaceDB(name, file);
+        return count;
+    }
+
+    private static long getArcStep(Archive archive) {
+        try {
+            return archive.getArcStep();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void closeQuietly(@Nullable RrdDb db) {
+        if (db != null) {
+            try {
+                db.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+        }
+    }
+}
@@ -14,6 +14,8 @@ package org.openhab.persistence.rrd4j.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -59,6 +61,7 @@ import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
@@ -92,20 +95,46 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
             new NamedThreadFactory("RRD4j"));
 
     private final Map<String, @Nullable RrdDefConfig> rrdDefs = new ConcurrentHashMap<>();
+    // definitions of explicitly configured items by item name
+    private volatile Map<String, RrdDefConfig> itemRrdDefs = Map.of();
 
-    private static final String DATASOURCE_STATE = "state";
+    static final String DATASOURCE_STATE = "state";
 
     public static final String DB_FOLDER = getUserPersistenceDataFolder() + File.separator + "rrd4j";
 
     private final Logger logger = LoggerFactory.getLogger(RRD4jPersistenceService.class);
 
-    private final Map<String, @Nullable ScheduledFuture<?>> scheduledJobs = new HashMap<>();
+    // stores of the same database are serialized, so the last value stored again isn't mixed with a new one
+    private static final int STORE_LOCK_STRIPES = 64;
+    private final Object[] storeLocks = new Object[STORE_LOCK_STRIPES];
+
+    private static final String MAX_OPEN_FILES = "maxOpenFiles";
+    private static final String BACKEND = "backend";
+    private static final String SYNC_INTERVAL = "syncInterval";
+    private static final Set<String> SERVICE_SETTINGS = Set.of(MAX_OPEN_FILES, BACKEND, SYNC_INTERVAL);
+    private static final int DEFAULT_MAX_OPEN_FILES = 500;
+    private static final int DEFAULT_SYNC_INTERVAL = 300;
+    private static final long DB_IDLE_TIMEOUT_MINUTES = 10;
+
+    // Relax rules because can only be null if component is not active
+    private @NonNullByDefault({}) RRD4jDbPool dbPool;
+    private @Nullable ScheduledFuture<?> dbPoolEvictionJob;
+    private @Nullable ScheduledFuture<?> dbPoolSyncJob;
+
+    // updates are written in background, coalescing those received within the same step
+    private final RRD4jWriteQueue writeQueue = new RRD4jWriteQueue(this::write);
+    private @Nullable ScheduledFuture<?> writeQueueJob;
+
+    private final RRD4jItemIndex itemIndex = new RRD4jItemIndex();
 
     protected final ItemRegistry itemRegistry;
 
     @Activate
     public RRD4jPersistenceService(final @Reference ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
+        for (int i = 0; i < STORE_LOCK_STRIPES; i++) {
+            storeLocks[i] = new Object();
+        }
     }
 
     @Override
@@ -119,70 +148,83 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     }
 
     @Override
-    public synchronized void store(final Item item, @Nullable final String alias) {
+    public void store(final Item item, @Nullable final String alias) {
         final String name = alias == null ? item.getName() : alias;
-        RrdDb db = getDB(name);
-        if (db != null) {
-            ConsolFun function = getConsolidationFunction(db);
-            long now = System.currentTimeMillis() / 1000;
-            if (function != ConsolFun.AVERAGE) {
+        DecimalType state = item.getStateAs(DecimalType.class);
+        if (state != null) {
+            writeQueue.enqueue(name, item, state, System.currentTimeMillis() / 1000);
+        } else {
+            logger.trace("Ignoring '{}' as its state '{}' is not numeric", name, item.getState());
+        }
+    }
+
+    private void write(String name, Item item, DecimalType[] states, long[] times) {
+        synchronized (getStoreLock(name)) {
+            RrdDb db = getDB(name);
+            if (db != null) {
                 try {
-                    // we store the last value again, so that the value change
-                    // in the database is not interpolated, but
-                    // happens right at this spot
-                    if (now - 1 > db.getLastUpdateTime()) {
-                        // only do it if there is not already a value
-                        double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
-                        if (!Double.isNaN(lastValue)) {
-                            Sample sample = db.createSample();
-                            sample.setTime(now - 1);
-                            sample.setValue(DATASOURCE_STATE, lastValue);
-                            sample.update();
-                            logger.debug("Stored '{}' with state '{}' in rrd4j database (again)", name,
-                                    mapToState(lastValue, item.getName()));
-                        }
+                    for (int i = 0; i < states.length; i++) {
+                        store(item, name, db, states[i], times[i]);
                     }
-                } catch (IOException e) {
-                    logger.debug("Error storing last value (again): {}", e.getMessage());
+                } finally {
+                    releaseDB(db);
                 }
             }
+        }
+    }
+
+    private Object getStoreLock(String name) {
+        return storeLocks[(name.hashCode() & Integer.MAX_VALUE) % STORE_LOCK_STRIPES];
+    }
+
+    private void store(final Item item, final String name, RrdDb db, DecimalType state, long now) {
+        ConsolFun function = getConsolidationFunction(db);
+        if (function != ConsolFun.AVERAGE) {
             try {
-                Sample sample = db.createSample();
-                sample.setTime(now);
-
-                DecimalType state = item.getStateAs(DecimalType.class);
-                if (state != null) {
-                    double value = state.toBigDecimal().doubleValue();
-                    if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
-                                                                                          // adjusted by stepsize
-                        value = value * db.getRrdDef().getStep();
+                // we store the last value again, so that the value change
+                // in the database is not interpolated, but
+                // happens right at this spot
+                if (now - 1 > db.getLastUpdateTime()) {
+                    // only do it if there is not already a value
+                    double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+                    if (!Double.isNaN(lastValue)) {
+                        Sample sample = db.createSample();
+                        sample.setTime(now - 1);
+                        sample.setValue(DATASOURCE_STATE, lastValue);
+                        sample.update();
+                        logger.debug("Stored '{}' with state '{}' in rrd4j database (again)", name,
+                                mapToState(lastValue, item));
                     }
-                    sample.setValue(DATASOURCE_STATE, value);
-                    sample.update();
-                    logger.debug("Stored '{}' with state '{}' in rrd4j database", name, state);
                 }
-            } catch (IllegalArgumentException e) {
-                if (e.getMessage().contains("at least one second step is required")) {
-                    // we try to store the value one second later
-                    ScheduledFuture<?> job = scheduledJobs.get(name);
-                    if (job != null) {
-                        job.cancel(true);
-                        scheduledJobs.remove(name);
-                    }
-                    job = scheduler.schedule(() -> store(item, name), 1, TimeUnit.SECONDS);
-                    scheduledJobs.put(name, job);
-                } else {
-                    logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
-                }
-            } catch (Exception e) {
-                logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
-            }
-            try {
-                db.close();
             } catch (IOException e) {
-                logger.debug("Error closing rrd4j database: {}", e.getMessage());
+                logger.debug("Error storing last value (again): {}", e.getMessage());
             }
         }
+        try {
+            Sample sample = db.createSample();
+            sample.setTime(now);
+
+            long step = db.getHeader().getStep();
+            writeQueue.setStep(name, step);
+            double value = state.toBigDecimal().doubleValue();
+            if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
+                                                                                  // adjusted by stepsize
+                value = value * step;
+            }
+            sample.setValue(DATASOURCE_STATE, value);
+            sample.update();
+            itemIndex.updated(name, db, now);
+            logger.debug("Stored '{}' with state '{}' in rrd4j database", name, state);
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage().contains("at least one second step is required")) {
+                // we try to store the value one second later
+                writeQueue.enqueue(name, item, state, now + 1);
+            } else {
+                logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+            }
+        } catch (Exception e) {
+            logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+        }
     }
 
     @Override
@@ -193,8 +235,12 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         String itemName = filter.getItemName();
+        // updates which haven't been written yet must be part of the results
+        writeQueue.flush(itemName);
         RrdDb db = getDB(itemName);
         if (db != null) {
+            // resolved once, instead of for each returned value
+            Item item = getItem(itemName);
             ConsolFun consolidationFunction = getConsolidationFunction(db);
             long start = 0L;
             long end = filter.getEndDate() == null ? System.currentTimeMillis() / 1000
@@ -211,10 +257,9 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                     if (filter.getOrdering() == Ordering.DESCENDING && filter.getPageSize() == 1
                             && filter.getPageNumber() == 0) {
                         if (filter.getEndDate() == null) {
-                            // we are asked only for the most recent value!
                             double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
                             if (!Double.isNaN(lastValue)) {
-                                HistoricItem rrd4jItem = new RRD4jItem(itemName, mapToState(lastValue, itemName),
+                                HistoricItem rrd4jItem = new RRD4jItem(itemName, mapToState(lastValue, item),
                                         ZonedDateTime.ofInstant(
                                                 Instant.ofEpochMilli(db.getLastArchiveUpdateTime() * 1000),
                                                 ZoneId.systemDefault()));
@@ -240,7 +285,7 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 long step = result.getRowCount() > 1 ? result.getStep() : 0;
                 for (double value : result.getValues(DATASOURCE_STATE)) {
                     if (!Double.isNaN(value) && (((ts >= start) && (ts <= end)) || (start == end))) {
-                        RRD4jItem rrd4jItem = new RRD4jItem(itemName, mapToState(value, itemName),
+                        RRD4jItem rrd4jItem = new RRD4jItem(itemName, mapToState(value, item),
                                 ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts * 1000), ZoneId.systemDefault()));
                         items.add(rrd4jItem);
                     }
@@ -249,6 +294,8 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 return items;
             } catch (IOException e) {
                 logger.warn("Could not query rrd4j database for item '{}': {}", itemName, e.getMessage());
+            } finally {
+                releaseDB(db);
             }
         }
         return Collections.emptyList();
@@ -256,24 +303,17 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
 
     @Override
     public Set<PersistenceItemInfo> getItemInfo() {
-        return Collections.emptySet();
+        return itemIndex.getItemInfo();
     }
 
-    protected @Nullable synchronized RrdDb getDB(String alias) {
+    /**
+     * Returns the open database of the given item, which must be returned with {@link #releaseDB(RrdDb)}
+     */
+    protected @Nullable RrdDb getDB(String alias) {
         RrdDb db = null;
         File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
         try {
-            if (file.exists()) {
-                // recreate the RrdDb instance from the file
-                db = new RrdDb(file.getAbsolutePath());
-            } else {
-                File folder = new File(DB_FOLDER);
-                if (!folder.exists()) {
-                    folder.mkdirs();
-                }
-                // create a new database file
-                db = new RrdDb(getRrdDef(alias, file));
-            }
+            db = dbPool.acquire(file.getAbsolutePath(), () -> getRrdDef(alias, file));
         } catch (IOException e) {
             logger.error("Could not create rrd4j database file '{}': {}", file.getAbsolutePath(), e.getMessage());
         } catch (RejectedExecutionException e) {
@@ -283,32 +323,64 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         return db;
     }
 
+    protected void releaseDB(RrdDb db) {
+        dbPool.release(db);
+    }
+
+    /**
+     * Writes the pending updates of the given item, and its database to its file if it's only up to date in memory, so
+     * its file can be read directly, e.g. by charts.
+     *
+     * @param alias the name of the database
+     */
+    public void syncDB(String alias) {
+        writeQueue.flush(alias);
+        dbPool.sync(new File(DB_FOLDER + File.separator + alias + ".rrd").getAbsolutePath());
+    }
+
+    /**
+     * Replaces the database of the given item with an imported database file.
+     *
+     * @param alias the name of the database
+     * @param importedFile the file replacing the database, which is moved
+     * @throws IOException if the database is in use or can't be replaced
+     */
+    void replaceDB(String alias, File importedFile) throws IOException {
+        File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
+        synchronized (getStoreLock(alias)) {
+            dbPool.invalidate(file.getAbsolutePath());
+            Files.move(importedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        itemIndex.reindex(alias, file.toPath());
+    }
+
     private @Nullable RrdDefConfig getRrdDefConfig(String itemName) {
-        RrdDefConfig useRdc = null;
-        for (Map.Entry<String, @Nullable RrdDefConfig> e : rrdDefs.entrySet()) {
-            // try to find special config
-            RrdDefConfig rdc = e.getValue();
-            if (rdc != null && rdc.appliesTo(itemName)) {
-                useRdc = rdc;
-                break;
-            }
+        // try to find special config
+        RrdDefConfig useRdc = itemRrdDefs.get(itemName);
+        if (useRdc != null) {
+            return useRdc;
         }
-        if (useRdc == null) { // not defined, use defaults
-            try {
-                Item item = itemRegistry.getItem(itemName);
-                if (item instanceof NumberItem) {
-                    NumberItem numberItem = (NumberItem) item;
-                    return numberItem.getDimension() != null ? rrdDefs.get(DEFAULT_QUANTIFIABLE)
-                            : rrdDefs.get(DEFAULT_NUMERIC);
-                }
-            } catch (ItemNotFoundException e) {
-                logger.debug("Could not find item '{}' in registry", itemName);
-            }
+        // not defined, use defaults
+        Item item = getItem(itemName);
+        if (item instanceof NumberItem) {
+            NumberItem numberItem = (NumberItem) item;
+            return numberItem.getDimension() != null ? rrdDefs.get(DEFAULT_QUANTIFIABLE)
+                    : rrdDefs.get(DEFAULT_NUMERIC);
         }
         return rrdDefs.get(DEFAULT_OTHER);
     }
 
-    private RrdDef getRrdDef(String itemName, File file) {
+    @Nullable Item getItem(String itemName) {
+        try {
+            return itemRegistry.getItem(itemName);
+        } catch (ItemNotFoundException e) {
+            logger.debug("Could not find item '{}' in registry", itemName);
+            return null;
+        }
+    }
+
+    RrdDef getRrdDef(String itemName, File file) {
         RrdDef rrdDef = new RrdDef(file.getAbsolutePath());
         RrdDefConfig useRdc = getRrdDefConfig(itemName);
         if (useRdc != null) {
@@ -324,30 +396,50 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
 
     public ConsolFun getConsolidationFunction(RrdDb db) {
         try {
-            return db.getRrdDef().getArcDefs()[0].getConsolFun();
+            return db.getArchive(0).getConsolFun();
         } catch (IOException e) {
             return ConsolFun.MAX;
         }
     }
 
-    private State mapToState(double value, String itemName) {
-        try {
-            Item item = itemRegistry.getItem(itemName);
-            if (item instanceof SwitchItem && !(item instanceof DimmerItem)) {
-                return value == 0.0d ? OnOffType.OFF : OnOffType.ON;
-            } else if (item instanceof ContactItem) {
-                return value == 0.0d ? OpenClosedType.CLOSED : OpenClosedType.OPEN;
-            } else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
-                // make sure Items that need PercentTypes instead of DecimalTypes do receive the right information
-                return new PercentType((int) Math.round(value * 100));
-            }
-        } catch (ItemNotFoundException e) {
-            logger.debug("Could not find item '{}' in registry", itemName);
+    State mapToState(double value, @Nullable Item item) {
+        if (item instanceof SwitchItem && !(item instanceof DimmerItem)) {
+            return value == 0.0d ? OnOffType.OFF : OnOffType.ON;
+        } else if (item instanceof ContactItem) {
+            return value == 0.0d ? OpenClosedType.CLOSED : OpenClosedType.OPEN;
+        } else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
+            // make sure Items that need PercentTypes instead of DecimalTypes do receive the right information
+            return new PercentType((int) Math.round(value * 100));
         }
         // just return a DecimalType as a fallback
         return new DecimalType(value);
     }
 
+    private int getIntegerSetting(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", key, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    private RRD4jBackendFactory.Backend getBackendSetting(Map<String, Object> config) {
+        Object value = config.get(BACKEND);
+        if (value != null) {
+            try {
+                return RRD4jBackendFactory.Backend.valueOf(value.toString().trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", BACKEND, value);
+            }
+        }
+        // the default backend of rrd4j, used before the backend could be configured
+        return RRD4jBackendFactory.Backend.NIO;
+    }
+
     private static String getUserPersistenceDataFolder() {
         return OpenHAB.getUserDataFolder() + File.separator + "persistence";
     }
@@ -356,6 +448,22 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
      * @{inheritDoc
      */
     public void activate(final Map<String, Object> config) {
+        // keep databases open between stores, closing those not used for a while
+        RRD4jBackendFactory.Backend backend = getBackendSetting(config);
+        int syncInterval = Math.max(1, getIntegerSetting(config, SYNC_INTERVAL, DEFAULT_SYNC_INTERVAL));
+        logger.debug("Using {} backend with sync interval of {} seconds", backend, syncInterval);
+        dbPool = new RRD4jDbPool(new RRD4jBackendFactory(backend, syncInterval),
+                getIntegerSetting(config, MAX_OPEN_FILES, DEFAULT_MAX_OPEN_FILES),
+                TimeUnit.MINUTES.toMillis(DB_IDLE_TIMEOUT_MINUTES));
+        dbPoolEvictionJob = scheduler.scheduleWithFixedDelay(dbPool::evictIdle, DB_IDLE_TIMEOUT_MINUTES,
+                DB_IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        writeQueueJob = scheduler.scheduleWithFixedDelay(writeQueue::flushDue, 1, 1, TimeUnit.SECONDS);
+        scheduler.execute(() -> itemIndex.scan(DB_FOLDER, dbPool::sync));
+        if (backend == RRD4jBackendFactory.Backend.MEMORY) {
+            dbPoolSyncJob = scheduler.scheduleWithFixedDelay(dbPool::sync, syncInterval, syncInterval,
+                    TimeUnit.SECONDS);
+        }
+
         // add default configurations
 
         RrdDefConfig defaultNumeric = new RrdDefConfig(DEFAULT_NUMERIC);
@@ -403,8 +511,8 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         while (keys.hasNext()) {
             String key = keys.next();
 
-            if (key.equals("service.pid") || key.equals("component.name")) {
-                // ignore service.pid and name
+            if (key.equals("service.pid") || key.equals("component.name") || SERVICE_SETTINGS.contains(key)) {
+                // ignore service.pid, name and service settings
                 continue;
             }
 
@@ -459,6 +567,48 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 }
             }
         }
+        indexRrdDefs();
+    }
+
+    /**
+     * Indexes the definitions by the items they apply to, so they aren't searched for each new database
+     */
+    private void indexRrdDefs() {
+        Map<String, RrdDefConfig> index = new HashMap<>();
+        for (RrdDefConfig rrdDef : rrdDefs.values()) {
+            if (rrdDef != null) {
+                for (String itemName : rrdDef.itemNames) {
+                    RrdDefConfig previous = index.putIfAbsent(itemName, rrdDef);
+                    if (previous != null) {
+                        logger.warn("Item '{}' is defined in {} and {}, using {}", itemName, previous.name,
+                                rrdDef.name, previous.name);
+                    }
+                }
+            }
+        }
+        itemRrdDefs = index;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        ScheduledFuture<?> job = writeQueueJob;
+        if (job != null) {
+            job.cancel(false);
+            writeQueueJob = null;
+        }
+        writeQueue.flushAll();
+        job = dbPoolEvictionJob;
+        if (job != null) {
+            job.cancel(false);
+            dbPoolEvictionJob = null;
+        }
+        job = dbPoolSyncJob;
+        if (job != null) {
+            job.cancel(false);
+            dbPoolSyncJob = null;
+        }
+        // databases loaded in memory are written to disk when they are closed
+        dbPool.close();
     }
 
     private class RrdArchiveDef {
@@ -572,10 +722,6 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
             }
         }
 
-        public boolean appliesTo(String item) {
-            return itemNames.contains(item);
-        }
-
         public boolean isValid() { // a valid configuration must be initialized
             // and contain at least one function
             return (isInitialized && (archives.size() > 0));
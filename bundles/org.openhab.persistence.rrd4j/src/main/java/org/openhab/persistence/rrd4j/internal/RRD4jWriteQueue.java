@@ -0,0 +1,407 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind queue of updates to rrd4j databases.
+ *
+ * All updates are kept and written in the order they were received, so rrd4j consolidates them exactly as if they had
+ * been written immediately. The updates of a database are written together once the step of the database in which
+ * the first one was received is over, but at the latest {@link #MAX_WRITE_DELAY} seconds after it, so the database is
+ * acquired once for several updates. As rrd4j needs a second between updates, an update received in the same second
+ * as the previous one is written one second later, as before they were queued.
+ *
+ * Updates which haven't been written yet are lost if openHAB isn't shut down properly, and readers must write the
+ * pending updates of a database with {@link #flush(String)} before reading it.
+ *
+ * Pending updates are kept in a timer wheel with one slot per second, which is advanced by {@link #flushDue()}. There
+ * is a single entry per database which is reused for all its updates. Due entries are moved from the wheel to a list
+ * of the thread writing them, and the updates of an entry are only written by one thread at a time, so they are
+ * written in order. {@link #flush(String)} takes the updates of an entry wherever it is, and waits for a write in
+ * progress, so the database is up to date once it returns.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jWriteQueue {
+
+    /**
+     * Maximum time in seconds an update waits before it's written
+     */
+    public static final long MAX_WRITE_DELAY = 60;
+
+    // maximum number of pending updates of a database, resp. of all databases, further updates are written right away
+    static final int MAX_PENDING_UPDATES = 1000;
+    static final int MAX_QUEUED_UPDATES = 100000;
+
+    /**
+     * Writes updates to their database
+     */
+    @FunctionalInterface
+    public interface UpdateWriter {
+        /**
+         * @param name the name of the database
+         * @param item the updated item
+         * @param states the states, in the order they were received
+         * @param times the times of the states in seconds, increasing
+         */
+        void write(String name, Item item, DecimalType[] states, long[] times);
+    }
+
+    private static class Entry {
+        private final String name;
+        private @Nullable Item item;
+        private DecimalType[] states = new DecimalType[4];
+        private long[] times = new long[4];
+        private int count;
+        // time of the last update written
+        private long lastWrittenTime;
+        private long dueTime;
+        private long step = 1;
+        // in a slot of the wheel
+        private boolean inWheel;
+        private @Nullable Entry wheelNext;
+        // due, but its updates haven't been taken by a writing thread yet
+        private boolean due;
+        // in the list of due entries of a writing thread, until that thread has reached it
+        private boolean listed;
+        private @Nullable Entry listNext;
+        // the thread writing the updates taken from the entry
+        private @Nullable Thread writingThread;
+
+        private Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Updates taken from an entry to be written
+     */
+    private static class Batch {
+        private final Item item;
+        private final DecimalType[] states;
+        private final long[] times;
+
+        private Batch(Item item, DecimalType[] states, long[] times) {
+            this.item = item;
+            this.states = states;
+            this.times = times;
+        }
+    }
+
+    // number of seconds covered by a turn of the wheel, must be a power of two
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jWriteQueue.class);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final @Nullable Entry[] wheel = new @Nullable Entry[WHEEL_SIZE];
+    private final UpdateWriter writer;
+    // current time in seconds
+    private final LongSupplier clock;
+    private long lastTick;
+    private int size;
+
+    /**
+     * @param writer writes the updates to their database
+     */
+    public RRD4jWriteQueue(UpdateWriter writer) {
+        this(writer, () -> System.currentTimeMillis() / 1000);
+    }
+
+    RRD4jWriteQueue(UpdateWriter writer, LongSupplier clock) {
+        this.writer = writer;
+        this.clock = clock;
+        this.lastTick = clock.getAsLong();
+    }
+
+    /**
+     * Queues an update.
+     *
+     * @param name the name of the database
+     * @param item the updated item
+     * @param state the new state
+     * @param time the time of the update in seconds
+     */
+    public void enqueue(String name, Item item, DecimalType state, long time) {
+        Entry entry = entries.computeIfAbsent(name, Entry::new);
+        boolean full;
+        synchronized (this) {
+            entry.item = item;
+            add(entry, state, time);
+            if (!entry.inWheel && !entry.due) {
+                // until the database has been written once its step is unknown, so it's written as soon as possible
+                long stepEnd = (time / entry.step + 1) * entry.step;
+                schedule(entry, Math.min(stepEnd, time + MAX_WRITE_DELAY));
+            }
+            full = entry.count >= MAX_PENDING_UPDATES || size >= MAX_QUEUED_UPDATES;
+        }
+        if (full) {
+            // updates received faster than they are written are written by the storing thread, so memory is bounded
+            logger.debug("Write queue is full, writing the pending updates of '{}' right away", name);
+            flush(name);
+        }
+    }
+
+    /**
+     * Sets the step of a database, used to decide when its updates are written.
+     *
+     * @param name the name of the database
+     * @param step the step in seconds
+     */
+    public void setStep(String name, long step) {
+        Entry entry = entries.get(name);
+        if (entry != null && step > 0) {
+            entry.step = step;
+        }
+    }
+
+    /**
+     * Returns the number of updates not written yet.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Writes the pending updates of a database, so it can be read.
+     *
+     * @param name the name of the database
+     */
+    public void flush(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return;
+        }
+        Batch batch;
+        synchronized (this) {
+            if (entry.writingThread == Thread.currentThread()) {
+                // called while writing the database, e.g. to queue an update again
+                return;
+            }
+            try {
+                // the updates written meanwhile must be in the database when it's read
+                while (entry.writingThread != null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (entry.inWheel) {
+                unschedule(entry);
+            } else if (!entry.due) {
+                return;
+            }
+            // a due entry is still in the list of another thread, which skips it as it isn't due anymore
+            batch = take(entry);
+        }
+        write(entry, batch);
+    }
+
+    /**
+     * Writes the updates which are due.
+     */
+    public void flushDue() {
+        long now = clock.getAsLong();
+        Entry list = null;
+        synchronized (this) {
+            if (now < lastTick) {
+                // the clock has been set back, so due times can't be trusted
+                for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                    list = collectDue(slot, Long.MAX_VALUE, list);
+                }
+                lastTick = now;
+            }
+            // catch up with ticks missed meanwhile, a full turn visits all slots
+            long from = Math.max(lastTick + 1, now - WHEEL_MASK);
+            for (long tick = from; tick <= now; tick++) {
+                list = collectDue((int) (tick & WHEEL_MASK), now, list);
+            }
+            lastTick = Math.max(lastTick, now);
+        }
+        writeListed(list);
+    }
+
+    /**
+     * Writes all the updates.
+     */
+    public void flushAll() {
+        Entry list = null;
+        synchronized (this) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                list = collectDue(slot, Long.MAX_VALUE, list);
+            }
+        }
+        writeListed(list);
+    }
+
+    private void add(Entry entry, DecimalType state, long time) {
+        long previousTime = entry.count > 0 ? entry.times[entry.count - 1] : entry.lastWrittenTime;
+        long updateTime = time;
+        if (updateTime <= previousTime) {
+            if (entry.count > 0 && previousTime > updateTime) {
+                // the previous update has already been moved to the next second, this one replaces it
+                entry.states[entry.count - 1] = state;
+                return;
+            }
+            updateTime = previousTime + 1;
+        }
+        if (entry.count == entry.times.length) {
+            entry.states = Arrays.copyOf(entry.states, entry.count * 2);
+            entry.times = Arrays.copyOf(entry.times, entry.count * 2);
+        }
+        entry.states[entry.count] = state;
+        entry.times[entry.count] = updateTime;
+        entry.count++;
+        size++;
+    }
+
+    private void schedule(Entry entry, long requestedDueTime) {
+        // slots of past seconds won't be visited again until the next turn of the wheel
+        long dueTime = Math.max(requestedDueTime, lastTick + 1);
+        int slot = (int) (dueTime & WHEEL_MASK);
+        entry.dueTime = dueTime;
+        entry.wheelNext = wheel[slot];
+        wheel[slot] = entry;
+        entry.inWheel = true;
+    }
+
+    /**
+     * Removes an entry from its slot of the wheel
+     */
+    private void unschedule(Entry entry) {
+        int slot = (int) (entry.dueTime & WHEEL_MASK);
+        Entry previous = null;
+        Entry current = wheel[slot];
+        while (current != null && current != entry) {
+            previous = current;
+            current = current.wheelNext;
+        }
+        if (current != null) {
+            if (previous == null) {
+                wheel[slot] = current.wheelNext;
+            } else {
+                previous.wheelNext = current.wheelNext;
+            }
+        }
+        entry.wheelNext = null;
+        entry.inWheel = false;
+    }
+
+    /**
+     * Moves the due entries of a slot to the given list, entries due in later turns of the wheel are kept
+     */
+    private @Nullable Entry collectDue(int slot, long now, @Nullable Entry list) {
+        Entry remaining = null;
+        Entry entry = wheel[slot];
+        while (entry != null) {
+            Entry next = entry.wheelNext;
+            if (entry.dueTime <= now) {
+                entry.wheelNext = null;
+                entry.inWheel = false;
+                entry.due = true;
+                if (!entry.listed) {
+                    // otherwise the thread whose list it's still in writes it
+                    entry.listed = true;
+                    entry.listNext = list;
+                    list = entry;
+                }
+            } else {
+                entry.wheelNext = remaining;
+                remaining = entry;
+            }
+            entry = next;
+        }
+        wheel[slot] = remaining;
+        return list;
+    }
+
+    /**
+     * Takes the updates of an entry to write them, must be called holding the lock while no other thread writes them
+     */
+    private @Nullable Batch take(Entry entry) {
+        Item item = entry.item;
+        Batch batch = null;
+        if (item != null && entry.count > 0) {
+            batch = new Batch(item, Arrays.copyOf(entry.states, entry.count), Arrays.copyOf(entry.times, entry.count));
+            entry.lastWrittenTime = entry.times[entry.count - 1];
+        }
+        Arrays.fill(entry.states, 0, entry.count, null);
+        size -= entry.count;
+        entry.count = 0;
+        entry.item = null;
+        entry.due = false;
+        if (batch != null) {
+            entry.writingThread = Thread.currentThread();
+        }
+        return batch;
+    }
+
+    private void writeListed(@Nullable Entry list) {
+        Entry entry = list;
+        while (entry != null) {
+            Entry next;
+            Batch batch = null;
+            synchronized (this) {
+                next = entry.listNext;
+                entry.listNext = null;
+                entry.listed = false;
+                try {
+                    while (entry.due && entry.writingThread != null) {
+                        wait();
+                    }
+                    if (entry.due) {
+                        batch = take(entry);
+                    }
+                } catch (InterruptedException e) {
+                    // the entry is written by the next flush
+                    Thread.currentThread().interrupt();
+                    schedule(entry, clock.getAsLong());
+                    entry.due = false;
+                }
+            }
+            write(entry, batch);
+            entry = next;
+        }
+    }
+
+    private void write(Entry entry, @Nullable Batch batch) {
+        if (batch == null) {
+            return;
+        }
+        try {
+            writer.write(entry.name, batch.item, batch.states, batch.times);
+        } catch (RuntimeException e) {
+            logger.warn("Could not persist '{}' to rrd4j database: {}", entry.name, e.getMessage());
+        } finally {
+            synchronized (this) {
+                entry.writingThread = null;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -14,13 +14,26 @@ package org.openhab.persistence.rrd4j.internal.charts;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.imageio.ImageIO;
 import javax.servlet.Servlet;
@@ -28,11 +41,17 @@ import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.PersistenceServiceRegistry;
 import org.openhab.core.ui.chart.ChartProvider;
 import org.openhab.core.ui.items.ItemUIRegistry;
 import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService;
@@ -60,6 +79,10 @@ import org.slf4j.LoggerFactory;
  * <li>groups: A comma separated list of group names, whose members should be displayed
  * </ul>
  *
+ * Rendered charts are cached until the next step of the displayed databases, and can be validated with the
+ * <code>ETag</code> and <code>Last-Modified</code> headers. Charts are rendered by a bounded pool of threads, and
+ * concurrent requests for the same chart wait for a single rendering.
+ *
  * @author Kai Kreuzer - Initial contribution
  * @author Chris Jackson - a few improvements
  * @author Jan N. Klug - a few improvements
@@ -82,6 +105,9 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 
     protected static final Map<String, Long> PERIODS = new HashMap<>();
 
+    // step in seconds used when the step of the databases isn't known
+    private static final long DEFAULT_STEP = 60;
+
     static {
         PERIODS.put("h", -3600000L);
         PERIODS.put("4h", -14400000L);
@@ -97,14 +123,87 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         PERIODS.put("Y", -31536000000L);
     }
 
+    private static final int CHART_CACHE_SIZE = 50;
+
+    private static final int RENDER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int RENDER_QUEUE_SIZE = 50;
+    private static final long RENDER_TIMEOUT_SECONDS = 30;
+
+    /**
+     * A rendered chart, encoded in the chart type
+     */
+    private static class CachedChart {
+        private final byte[] data;
+        private final String etag;
+        private final long lastModified;
+        private final long expiry;
+
+        private CachedChart(byte[] data, long lastModified, long expiry) {
+            this.data = data;
+            this.etag = "\"" + Integer.toHexString(Arrays.hashCode(data)) + "-" + Integer.toHexString(data.length)
+                    + "\"";
+            this.lastModified = lastModified;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * A chart with the step of its databases, the shortest time after which it may change
+     */
+    private static class RenderedChart {
+        private final BufferedImage image;
+        private final long step;
+
+        private RenderedChart(BufferedImage image, long step) {
+            this.image = image;
+            this.step = step;
+        }
+    }
+
+    /**
+     * Image and output buffers of a rendering thread, reused as long as the chart size doesn't change
+     */
+    private static class RenderBuffers {
+        private @Nullable BufferedImage image;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private BufferedImage getImage(int width, int height) {
+            BufferedImage image = this.image;
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                this.image = image;
+            }
+            return image;
+        }
+    }
+
+    private final ThreadPoolExecutor renderExecutor = new ThreadPoolExecutor(RENDER_THREADS, RENDER_THREADS, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(RENDER_QUEUE_SIZE), new NamedThreadFactory("RRD4jChart"));
+    private final ThreadLocal<RenderBuffers> renderBuffers = ThreadLocal.withInitial(RenderBuffers::new);
+    private final Map<String, CompletableFuture<CachedChart>> pendingRenders = new ConcurrentHashMap<>();
+
+    private final Map<String, CachedChart> chartCache = new LinkedHashMap<String, CachedChart>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedChart> eldest) {
+            return size() > CHART_CACHE_SIZE;
+        }
+    };
+
     @Reference
     protected HttpService httpService;
 
     @Reference
     protected ItemUIRegistry itemUIRegistry;
 
+    @Reference
+    protected PersistenceServiceRegistry persistenceServiceRegistry;
+
     @Activate
     protected void activate() {
+        // don't keep idle threads and their buffers
+        renderExecutor.allowCoreThreadTimeOut(true);
         try {
             logger.debug("Starting up rrd chart servlet at {}", SERVLET_NAME);
             httpService.registerServlet(SERVLET_NAME, this, new Hashtable<>(), httpService.createDefaultHttpContext());
@@ -118,6 +217,13 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Deactivate
     protected void deactivate() {
         httpService.unregister(SERVLET_NAME);
+        renderExecutor.shutdownNow();
+        // release the requests waiting for renderings which won't run anymore
+        pendingRenders.values().forEach(render -> render.cancel(false));
+        pendingRenders.clear();
+        synchronized (chartCache) {
+            chartCache.clear();
+        }
     }
 
     @Override
@@ -139,23 +245,152 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
             // use a day as the default period
             period = PERIODS.get("D");
         }
-        // Create the start and stop time
-        Date timeEnd = new Date();
-        Date timeBegin = new Date(timeEnd.getTime() + period);
+        String items = req.getParameter("items");
+        String groups = req.getParameter("groups");
 
         // Set the content type to that provided by the chart provider
         res.setContentType("image/" + getChartType());
         try {
-            BufferedImage chart = createChart(null, null, timeBegin, timeEnd, height, width, req.getParameter("items"),
-                    req.getParameter("groups"), null, null);
-            ImageIO.write(chart, getChartType().toString(), res.getOutputStream());
+            String key = items + "|" + groups + "|" + period + "|" + width + "|" + height;
+            CachedChart chart = getCachedChart(key);
+            if (chart == null) {
+                chart = awaitChart(key, period, height, width, items, groups);
+            }
+            if (req instanceof HttpServletRequest && res instanceof HttpServletResponse) {
+                HttpServletRequest httpRequest = (HttpServletRequest) req;
+                HttpServletResponse httpResponse = (HttpServletResponse) res;
+                httpResponse.setHeader("ETag", chart.etag);
+                httpResponse.setDateHeader("Last-Modified", chart.lastModified);
+                httpResponse.setHeader("Cache-Control", "max-age="
+                        + Math.max(0, (chart.expiry - System.currentTimeMillis()) / 1000) + ", must-revalidate");
+                if (isNotModified(httpRequest, chart)) {
+                    httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+            }
+            res.setContentLength(chart.data.length);
+            res.getOutputStream().write(chart.data);
         } catch (ItemNotFoundException e) {
             logger.debug("Item not found error while generating chart.");
+        } catch (RejectedExecutionException e) {
+            logger.debug("Too many charts waiting to be rendered, rejecting chart request");
+            if (res instanceof HttpServletResponse) {
+                HttpServletResponse httpResponse = (HttpServletResponse) res;
+                httpResponse.setHeader("Retry-After", "1");
+                httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            }
         } catch (IllegalArgumentException e) {
             logger.debug("Illegal argument in chart", e);
         }
     }
 
+    /**
+     * Waits for the chart to be rendered, sharing the rendering with the concurrent requests of the same chart.
+     */
+    private CachedChart awaitChart(String key, long period, int height, int width, String items, String groups)
+            throws ItemNotFoundException, IOException {
+        CompletableFuture<CachedChart> render = new CompletableFuture<>();
+        CompletableFuture<CachedChart> pendingRender = pendingRenders.putIfAbsent(key, render);
+        if (pendingRender != null) {
+            logger.trace("Waiting for chart '{}' already being rendered", key);
+            render = pendingRender;
+        } else {
+            submitRender(key, render, period, height, width, items, groups);
+        }
+        try {
+            return render.get(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for chart to be rendered");
+        } catch (TimeoutException | CancellationException e) {
+            throw new IOException("Chart could not be rendered in time");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ItemNotFoundException) {
+                throw (ItemNotFoundException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Chart could not be rendered", cause);
+        }
+    }
+
+    private void submitRender(String key, CompletableFuture<CachedChart> render, long period, int height, int width,
+            String items, String groups) {
+        // the chart may have been cached by a rendering which just completed
+        CachedChart cachedChart = getCachedChart(key);
+        if (cachedChart != null) {
+            pendingRenders.remove(key, render);
+            render.complete(cachedChart);
+            return;
+        }
+        try {
+            renderExecutor.execute(() -> {
+                try {
+                    render.complete(renderAndCacheChart(key, period, height, width, items, groups));
+                } catch (Exception e) {
+                    render.completeExceptionally(e);
+                } finally {
+                    pendingRenders.remove(key, render);
+                }
+            });
+            logger.trace("Queued rendering of chart '{}', {} charts waiting", key, renderExecutor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            pendingRenders.remove(key, render);
+            render.completeExceptionally(e);
+        }
+    }
+
+    private CachedChart getCachedChart(String key) {
+        synchronized (chartCache) {
+            CachedChart chart = chartCache.get(key);
+            if (chart != null && chart.expiry <= System.currentTimeMillis()) {
+                chartCache.remove(key);
+                chart = null;
+            }
+            return chart;
+        }
+    }
+
+    private CachedChart renderAndCacheChart(String key, long period, int height, int width, String items,
+            String groups) throws ItemNotFoundException, IOException {
+        // Create the start and stop time
+        Date timeEnd = new Date();
+        Date timeBegin = new Date(timeEnd.getTime() + period);
+
+        RenderedChart renderedChart = renderChart(timeBegin, timeEnd, height, width, items, groups, true);
+        if (renderedChart == null) {
+            throw new IOException("Chart could not be rendered");
+        }
+        ByteArrayOutputStream out = renderBuffers.get().out;
+        out.reset();
+        ImageIO.write(renderedChart.image, getChartType().toString(), out);
+        // the chart is valid until the databases are updated again, at the next step boundary
+        long stepMillis = renderedChart.step * 1000;
+        long now = System.currentTimeMillis();
+        CachedChart chart = new CachedChart(out.toByteArray(), now / 1000 * 1000, (now / stepMillis + 1) * stepMillis);
+        synchronized (chartCache) {
+            chartCache.put(key, chart);
+        }
+        return chart;
+    }
+
+    private boolean isNotModified(HttpServletRequest request, CachedChart chart) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return Arrays.stream(ifNoneMatch.split(",")).map(String::trim)
+                    .anyMatch(etag -> etag.equals(chart.etag) || "*".equals(etag));
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && chart.lastModified <= ifModifiedSince;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     /**
      * Adds a line for the item to the graph definition.
      * The color of the line is determined by the counter, it simply picks the according index from LINECOLORS (and
@@ -164,21 +399,26 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
      * @param graphDef the graph definition to fill
      * @param item the item to add a line for
      * @param counter defines the number of the datasource and is used to determine the line color
+     * @return the step in seconds of the item database
      */
-    protected void addLine(RrdGraphDef graphDef, Item item, int counter) {
+    protected long addLine(RrdGraphDef graphDef, Item item, int counter) {
         Color color = LINECOLORS[counter % LINECOLORS.length];
         String label = itemUIRegistry.getLabel(item.getName());
         String rrdName = RRD4jPersistenceService.DB_FOLDER + File.separator + item.getName() + ".rrd";
         ConsolFun consolFun;
+        long step;
         if (label != null && label.contains("[") && label.contains("]")) {
             label = label.substring(0, label.indexOf('['));
         }
+        syncDB(item.getName());
         try {
             RrdDb db = new RrdDb(rrdName);
-            consolFun = db.getRrdDef().getArcDefs()[0].getConsolFun();
+            consolFun = db.getArchive(0).getConsolFun();
+            step = db.getHeader().getStep();
             db.close();
         } catch (IOException e) {
             consolFun = ConsolFun.MAX;
+            step = DEFAULT_STEP;
         }
         if (item instanceof NumberItem) {
             // we only draw a line
@@ -192,6 +432,18 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
             graphDef.area(Integer.toString(counter), areaColor);
             graphDef.line(Integer.toString(counter), color, label, 2);
         }
+        return step;
+    }
+
+    /**
+     * Writes the database of the item to its file if the rrd4j service only keeps it up to date in memory, as the
+     * database is read from its file.
+     */
+    private void syncDB(String itemName) {
+        PersistenceService service = persistenceServiceRegistry.get("rrd4j");
+        if (service instanceof RRD4jPersistenceService) {
+            ((RRD4jPersistenceService) service).syncDB(itemName);
+        }
     }
 
     @Override
@@ -223,6 +475,36 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Override
     public BufferedImage createChart(String service, String theme, Date startTime, Date endTime, int height, int width,
             String items, String groups, Integer dpi, Boolean legend) throws ItemNotFoundException {
+        RenderedChart chart;
+        try {
+            // the image is returned to the caller, so it can't be reused
+            chart = renderExecutor
+                    .submit(() -> renderChart(startTime, endTime, height, width, items, groups, false))
+                    .get(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (TimeoutException | RejectedExecutionException e) {
+            logger.debug("Chart could not be rendered in time: {}", e.getMessage());
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ItemNotFoundException) {
+                throw (ItemNotFoundException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            logger.error("Error generating graph.", cause);
+            return null;
+        }
+        return chart != null ? chart.image : null;
+    }
+
+    /**
+     * Renders a chart, in the reused image buffer of the rendering thread if <code>reuseImage</code> is set.
+     */
+    private RenderedChart renderChart(Date startTime, Date endTime, int height, int width, String items,
+            String groups, boolean reuseImage) throws ItemNotFoundException {
         RrdGraphDef graphDef = new RrdGraphDef();
 
         long period = (startTime.getTime() - endTime.getTime()) / 1000;
@@ -237,13 +519,14 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         graphDef.setSmallFont(new Font("SansSerif", Font.PLAIN, 11));
 
         int seriesCounter = 0;
+        long step = DEFAULT_STEP;
 
         // Loop through all the items
         if (items != null) {
             String[] itemNames = items.split(",");
             for (String itemName : itemNames) {
                 Item item = itemUIRegistry.getItem(itemName);
-                addLine(graphDef, item, seriesCounter++);
+                step = Math.min(step, addLine(graphDef, item, seriesCounter++));
             }
         }
 
@@ -255,7 +538,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
                 if (item instanceof GroupItem) {
                     GroupItem groupItem = (GroupItem) item;
                     for (Item member : groupItem.getMembers()) {
-                        addLine(graphDef, member, seriesCounter++);
+                        step = Math.min(step, addLine(graphDef, member, seriesCounter++));
                     }
                 } else {
                     throw new ItemNotFoundException("Item '" + item.getName() + "' defined in groups is not a group.");
@@ -267,11 +550,18 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         RrdGraph graph;
         try {
             graph = new RrdGraph(graphDef);
-            BufferedImage bi = new BufferedImage(graph.getRrdGraphInfo().getWidth(),
-                    graph.getRrdGraphInfo().getHeight(), BufferedImage.TYPE_INT_RGB);
-            graph.render(bi.getGraphics());
+            int imageWidth = graph.getRrdGraphInfo().getWidth();
+            int imageHeight = graph.getRrdGraphInfo().getHeight();
+            BufferedImage bi = reuseImage ? renderBuffers.get().getImage(imageWidth, imageHeight)
+                    : new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics graphics = bi.getGraphics();
+            try {
+                graph.render(graphics);
+            } finally {
+                graphics.dispose();
+            }
 
-            return bi;
+            return new RenderedChart(bi, Math.max(1, step));
         } catch (IOException e) {
             logger.error("Error generating graph.", e);
         }
@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.charts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.PersistenceServiceRegistry;
+import org.openhab.core.ui.items.ItemUIRegistry;
+import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.http.NamespaceException;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.data.DataProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This servlet returns the time series of a given set of items, as they are drawn by the {@link RRD4jChartServlet}.
+ * The archive whose resolution best matches the requested period and width is used, and values are consolidated so
+ * exactly one value per pixel is returned. It accepts the following HTTP parameters:
+ * <ul>
+ * <li>w: number of values to return, the width in pixels of the chart</li>
+ * <li>period: the time span to return. Value can be h,4h,8h,12h,D,3D,W,2W,M,2M,4M,Y</li>
+ * <li>items: A comma separated list of item names to return
+ * <li>groups: A comma separated list of group names, whose members should be returned
+ * <li>format: json (default) or csv
+ * </ul>
+ *
+ * The JSON format is columnar, with the timestamps in milliseconds and an array of values per item, using
+ * <code>null</code> for missing values:
+ *
+ * <pre>
+ * {"timestamps":[...],"series":{"Item1":[...],"Item2":[...]}}
+ * </pre>
+ *
+ * The CSV format has a header row, and a row per timestamp with a column per item.
+ *
+ * @author Gabor Bicskei - Initial contribution
+ */
+@Component(service = {}, immediate = true)
+public class RRD4jDataServlet implements Servlet {
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jDataServlet.class);
+
+    /** the URI of this servlet */
+    public static final String SERVLET_NAME = "/rrddata";
+
+    private static final int DEFAULT_WIDTH = 480;
+    private static final int MAX_WIDTH = 10000;
+
+    @Reference
+    protected HttpService httpService;
+
+    @Reference
+    protected ItemUIRegistry itemUIRegistry;
+
+    @Reference
+    protected PersistenceServiceRegistry persistenceServiceRegistry;
+
+    @Activate
+    protected void activate() {
+        try {
+            logger.debug("Starting up rrd data servlet at {}", SERVLET_NAME);
+            httpService.registerServlet(SERVLET_NAME, this, new Hashtable<>(), httpService.createDefaultHttpContext());
+        } catch (NamespaceException | ServletException e) {
+            logger.error("Error during servlet startup", e);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        httpService.unregister(SERVLET_NAME);
+    }
+
+    @Override
+    public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
+        logger.debug("RRD4J received incoming data request: {}", req);
+
+        // the number of values returned, as for a chart of that width
+        int width = DEFAULT_WIDTH;
+        String widthParameter = req.getParameter("w");
+        if (widthParameter != null) {
+            try {
+                width = Math.max(1, Math.min(MAX_WIDTH, Integer.parseInt(widthParameter)));
+            } catch (NumberFormatException e) {
+                logger.debug("Illegal width '{}' in data request", widthParameter);
+                if (res instanceof HttpServletResponse) {
+                    ((HttpServletResponse) res).sendError(HttpServletResponse.SC_BAD_REQUEST,
+                            "Illegal width '" + widthParameter + "'");
+                }
+                return;
+            }
+        }
+        Long period = RRD4jChartServlet.PERIODS.get(req.getParameter("period"));
+        if (period == null) {
+            // use a day as the default period
+            period = RRD4jChartServlet.PERIODS.get("D");
+        }
+        boolean csv = "csv".equalsIgnoreCase(req.getParameter("format"));
+
+        List<String> itemNames;
+        try {
+            itemNames = getItemNames(req.getParameter("items"), req.getParameter("groups"));
+        } catch (ItemNotFoundException e) {
+            logger.debug("Item not found error while returning data: {}", e.getMessage());
+            if (res instanceof HttpServletResponse) {
+                ((HttpServletResponse) res).sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+            }
+            return;
+        }
+
+        long end = System.currentTimeMillis() / 1000;
+        long start = end + period / 1000;
+        DataProcessor dataProcessor = new DataProcessor(start, end);
+        dataProcessor.setPixelCount(width);
+        // as the chart does, choose the archive with one value per pixel
+        dataProcessor.setFetchRequestResolution((end - start) / width);
+        List<String> series = new ArrayList<>();
+        for (String itemName : itemNames) {
+            String rrdName = RRD4jPersistenceService.DB_FOLDER + File.separator + itemName + ".rrd";
+            if (new File(rrdName).exists()) {
+                syncDB(itemName);
+                dataProcessor.addDatasource(itemName, rrdName, "state", getConsolidationFunction(rrdName));
+                series.add(itemName);
+            }
+        }
+        if (!series.isEmpty()) {
+            dataProcessor.processData();
+        }
+
+        res.setCharacterEncoding("UTF-8");
+        res.setContentType(csv ? "text/csv" : "application/json");
+        PrintWriter writer = res.getWriter();
+        if (series.isEmpty()) {
+            writer.write(csv ? "timestamp\n" : "{\"timestamps\":[],\"series\":{}}");
+        } else if (csv) {
+            writeCsv(writer, dataProcessor, series);
+        } else {
+            writeJson(writer, dataProcessor, series);
+        }
+        writer.flush();
+    }
+
+    private List<String> getItemNames(String items, String groups) throws ItemNotFoundException {
+        List<String> itemNames = new ArrayList<>();
+        if (items != null) {
+            for (String itemName : items.split(",")) {
+                itemNames.add(itemUIRegistry.getItem(itemName).getName());
+            }
+        }
+        if (groups != null) {
+            for (String groupName : groups.split(",")) {
+                Item item = itemUIRegistry.getItem(groupName);
+                if (item instanceof GroupItem) {
+                    for (Item member : ((GroupItem) item).getMembers()) {
+                        itemNames.add(member.getName());
+                    }
+                } else {
+                    throw new ItemNotFoundException("Item '" + item.getName() + "' defined in groups is not a group.");
+                }
+            }
+        }
+        return itemNames;
+    }
+
+    /**
+     * Writes the database of the item to its file if the rrd4j service only keeps it up to date in memory, as the
+     * database is read from its file.
+     */
+    private void syncDB(String itemName) {
+        PersistenceService service = persistenceServiceRegistry.get("rrd4j");
+        if (service instanceof RRD4jPersistenceService) {
+            ((RRD4jPersistenceService) service).syncDB(itemName);
+        }
+    }
+
+    private ConsolFun getConsolidationFunction(String rrdName) {
+        try {
+            RrdDb db = new RrdDb(rrdName, true);
+            try {
+                return db.getArchive(0).getConsolFun();
+            } finally {
+                db.close();
+            }
+        } catch (IOException e) {
+            return ConsolFun.MAX;
+        }
+    }
+
+    private void writeJson(PrintWriter writer, DataProcessor dataProcessor, List<String> series) {
+        long[] timestamps = dataProcessor.getTimestampsPerPixel();
+        writer.write("{\"timestamps\":[");
+        for (int i = 0; i < timestamps.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.print(timestamps[i] * 1000);
+        }
+        writer.write("],\"series\":{");
+        for (int s = 0; s < series.size(); s++) {
+            String name = series.get(s);
+            if (s > 0) {
+                writer.write(',');
+            }
+            writer.write('"');
+            writer.write(name.replace("\\", "\\\\").replace("\"", "\\\""));
+            writer.write("\":[");
+            double[] values = dataProcessor.getValuesPerPixel(name);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeValue(writer, values[i], "null");
+            }
+            writer.write(']');
+        }
+        writer.write("}}");
+    }
+
+    private void writeCsv(PrintWriter writer, DataProcessor dataProcessor, List<String> series) {
+        long[] timestamps = dataProcessor.getTimestampsPerPixel();
+        List<double[]> values = new ArrayList<>(series.size());
+        writer.write("timestamp");
+        for (String name : series) {
+            writer.write(',');
+            writer.write(name);
+            values.add(dataProcessor.getValuesPerPixel(name));
+        }
+        writer.write('\n');
+        for (int i = 0; i < timestamps.length; i++) {
+            writer.print(timestamps[i] * 1000);
+            for (double[] seriesValues : values) {
+                writer.write(',');
+                writeValue(writer, seriesValues[i], "");
+            }
+            writer.write('\n');
+        }
+    }
+
+    private void writeValue(PrintWriter writer, double value, String missingValue) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writer.write(missingValue);
+        } else {
+            writer.print(value);
+        }
+    }
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+    }
+
+    @Override
+    public ServletConfig getServletConfig() {
+        return null;
+    }
+
+    @Override
+    public String getServletInfo() {
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
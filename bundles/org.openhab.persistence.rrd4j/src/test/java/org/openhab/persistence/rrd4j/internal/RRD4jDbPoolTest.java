@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class RRD4jDbPoolTest {
+    private @TempDir Path folder;
+
+    private final RRD4jBackendFactory backendFactory = new RRD4jBackendFactory(RRD4jBackendFactory.Backend.FILE, 300);
+    // a negative timeout makes databases idle as soon as they are released
+    private RRD4jDbPool pool = new RRD4jDbPool(backendFactory, 10, -1);
+
+    @AfterEach
+    public void after() {
+        pool.close();
+    }
+
+    @Test
+    public void acquiredDatabaseIsSharedAndOnlyClosedOnceReleasedByAll() throws IOException {
+        RrdDb db = acquire("a");
+        assertThat(acquire("a"), is(sameInstance(db)));
+
+        pool.release(db);
+        pool.evictIdle();
+        assertThat(pool.getOpenCount(), is(1));
+        assertThat(db.isClosed(), is(false));
+
+        pool.release(db);
+        pool.evictIdle();
+        assertThat(pool.getOpenCount(), is(0));
+        assertThat(db.isClosed(), is(true));
+    }
+
+    @Test
+    public void recentlyUsedDatabaseIsNotEvicted() throws IOException {
+        pool = new RRD4jDbPool(backendFactory, 10, 60_000);
+        RrdDb db = acquire("a");
+        pool.release(db);
+
+        pool.evictIdle();
+
+        assertThat(pool.getOpenCount(), is(1));
+        assertThat(acquire("a"), is(sameInstance(db)));
+    }
+
+    @Test
+    public void onlyDatabasesNotInUseAreClosedAboveCapacity() throws IOException {
+        pool = new RRD4jDbPool(backendFactory, 1, 60_000);
+        RrdDb a = acquire("a");
+        RrdDb b = acquire("b");
+        // both are in use, so the capacity is exceeded
+        assertThat(pool.getOpenCount(), is(2));
+
+        pool.release(b);
+
+        assertThat(pool.getOpenCount(), is(1));
+        assertThat(b.isClosed(), is(true));
+        assertThat(a.isClosed(), is(false));
+        assertThat(acquire("a"), is(sameInstance(a)));
+    }
+
+    @Test
+    public void databaseInUseIsNotInvalidated() throws IOException {
+        RrdDb db = acquire("a");
+        String path = db.getPath();
+
+        assertThrows(IOException.class, () -> pool.invalidate(path));
+        assertThat(db.isClosed(), is(false));
+
+        pool.release(db);
+        pool.invalidate(path);
+        assertThat(db.isClosed(), is(true));
+        RrdDb reopened = acquire("a");
+        assertThat(reopened, is(not(sameInstance(db))));
+        assertThat(reopened.isClosed(), is(false));
+    }
+
+    private RrdDb acquire(String name) throws IOException {
+        String path = folder.resolve(name + ".rrd").toString();
+        return pool.acquire(path, () -> {
+            RrdDef rrdDef = new RrdDef(path, 1000, 1);
+            rrdDef.addDatasource(RRD4jPersistenceService.DATASOURCE_STATE, DsType.GAUGE, 600, Double.NaN, Double.NaN);
+            rrdDef.addArchive(ConsolFun.AVERAGE, 0.5, 1, 10);
+            return rrdDef;
+        });
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.persistence.PersistenceItemInfo;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class RRD4jItemIndexTest {
+    private static final long START = 1000;
+    // the first archive holds the last 10 seconds, the second one 1000 seconds consolidated by 10 seconds
+    private static final int FINE_ROWS = 10;
+
+    private @TempDir Path folder;
+
+    private final RRD4jItemIndex index = new RRD4jItemIndex();
+
+    @Test
+    public void earliestTimeIsTheFirstValueOfAllArchives() throws IOException {
+        try (RrdDb db = createDb("item")) {
+            update(db, START + 1, START + 100);
+        }
+
+        index.scan(folder.toString(), path -> {
+        });
+
+        RRD4jItemInfo info = getItemInfo("item");
+        assertThat(info.getLatestSeconds(), is(START + 100));
+        // older than the values kept in the first archive, as the second archive keeps them longer
+        assertThat(info.getEarliestSeconds(), is(greaterThan(START)));
+        assertThat(info.getEarliestSeconds(), is(lessThan(START + 100 - FINE_ROWS)));
+    }
+
+    @Test
+    public void earliestTimeIsUnknownWithoutValues() throws IOException {
+        createDb("item").close();
+
+        index.scan(folder.toString(), path -> {
+        });
+
+        RRD4jItemInfo info = getItemInfo("item");
+        assertThat(info.getEarliest(), is(nullValue()));
+        assertThat(info.getLatestSeconds(), is(START));
+    }
+
+    @Test
+    public void updatesExtendTheTimeRange() throws IOException {
+        try (RrdDb db = createDb("item")) {
+            update(db, START + 1, START + 10);
+            index.updated("item", db, START + 10);
+            RRD4jItemInfo info = getItemInfo("item");
+            long earliest = info.getEarliestSeconds();
+            assertThat(info.getLatestSeconds(), is(START + 10));
+
+            update(db, START + 11, START + 20);
+            index.updated("item", db, START + 20);
+
+            info = getItemInfo("item");
+            assertThat(info.getEarliestSeconds(), is(earliest));
+            assertThat(info.getLatestSeconds(), is(START + 20));
+        }
+    }
+
+    @Test
+    public void scanKeepsUpdatesNotWrittenToTheFileYet() throws IOException {
+        try (RrdDb db = createDb("item")) {
+            update(db, START + 1, START + 10);
+            index.updated("item", db, START + 10);
+            // e.g. an update of a database loaded in memory
+            index.updated("item", db, START + 50);
+        }
+        long earliest = getItemInfo("item").getEarliestSeconds();
+
+        index.scan(folder.toString(), path -> {
+        });
+
+        RRD4jItemInfo info = getItemInfo("item");
+        assertThat(info.getEarliestSeconds(), is(earliest));
+        assertThat(info.getLatestSeconds(), is(START + 50));
+    }
+
+    private RrdDb createDb(String name) throws IOException {
+        RrdDef rrdDef = new RrdDef(folder.resolve(name + ".rrd").toString(), START, 1);
+        rrdDef.addDatasource(RRD4jPersistenceService.DATASOURCE_STATE, DsType.GAUGE, 600, Double.NaN, Double.NaN);
+        rrdDef.addArchive(ConsolFun.AVERAGE, 0.5, 1, FINE_ROWS);
+        rrdDef.addArchive(ConsolFun.AVERAGE, 0.5, 10, 100);
+        return new RrdDb(rrdDef);
+    }
+
+    private void update(RrdDb db, long from, long to) throws IOException {
+        for (long time = from; time <= to; time++) {
+            db.createSample().setTime(time).setValue(RRD4jPersistenceService.DATASOURCE_STATE, time).update();
+        }
+    }
+
+    private RRD4jItemInfo getItemInfo(String name) {
+        for (PersistenceItemInfo info : index.getItemInfo()) {
+            if (info.getName().equals(name)) {
+                return (RRD4jItemInfo) info;
+            }
+        }
+        throw new AssertionError("No item info for " + name);
+    }
+}
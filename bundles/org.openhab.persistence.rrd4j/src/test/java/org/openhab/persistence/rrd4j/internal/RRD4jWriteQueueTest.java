@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+
+/**
+ * @author Gabor Bicskei - Initial contribution
+ */
+public class RRD4jWriteQueueTest {
+    private final Item item = new NumberItem("item");
+    private final AtomicLong clock = new AtomicLong(1000);
+    // times of the updates written to each database, in the order they were written
+    private final Map<String, List<Long>> written = new ConcurrentHashMap<>();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    private final RRD4jWriteQueue queue = new RRD4jWriteQueue(this::write, clock::get);
+
+    private void write(String name, Item item, DecimalType[] states, long[] times) {
+        List<Long> writtenTimes = written.computeIfAbsent(name, n -> new CopyOnWriteArrayList<>());
+        for (int i = 0; i < times.length; i++) {
+            if (!writtenTimes.isEmpty() && writtenTimes.get(writtenTimes.size() - 1) >= times[i]) {
+                errors.add(name + ": " + times[i] + " written after " + writtenTimes.get(writtenTimes.size() - 1));
+            }
+            if (states[i].longValue() != times[i]) {
+                errors.add(name + ": state " + states[i] + " written at " + times[i]);
+            }
+            writtenTimes.add(times[i]);
+        }
+    }
+
+    private void enqueue(String name, long time) {
+        queue.enqueue(name, item, new DecimalType(time), time);
+    }
+
+    @Test
+    public void updatesAreWrittenInOrderOnceDue() {
+        enqueue("a", 1000);
+        enqueue("a", 1001);
+
+        queue.flushDue();
+        assertThat(written.isEmpty(), is(true));
+        assertThat(queue.size(), is(2));
+
+        clock.set(1001);
+        queue.flushDue();
+        assertThat(written.get("a"), is(List.of(1000L, 1001L)));
+        assertThat(queue.size(), is(0));
+        assertThat(errors, is(empty()));
+    }
+
+    @Test
+    public void updateInSameSecondIsShiftedAndReplacedByLaterOnes() {
+        List<DecimalType> states = new ArrayList<>();
+        RRD4jWriteQueue queue = new RRD4jWriteQueue((name, item, s, times) -> {
+            states.addAll(List.of(s));
+            written.put(name, toList(times));
+        }, clock::get);
+
+        queue.enqueue("a", item, new DecimalType(1), 1000);
+        queue.enqueue("a", item, new DecimalType(2), 1000);
+        queue.enqueue("a", item, new DecimalType(3), 1000);
+        queue.flushAll();
+
+        assertThat(written.get("a"), is(List.of(1000L, 1001L)));
+        assertThat(states, is(List.of(new DecimalType(1), new DecimalType(3))));
+    }
+
+    @Test
+    public void updatesAreWrittenAtTheEndOfTheStepButNotLaterThanMaxDelay() {
+        enqueue("a", 1000);
+        clock.set(1001);
+        queue.flushDue();
+        queue.setStep("a", 300);
+
+        enqueue("a", 1050);
+        clock.set(1050 + RRD4jWriteQueue.MAX_WRITE_DELAY - 1);
+        queue.flushDue();
+        assertThat(written.get("a"), is(List.of(1000L)));
+
+        clock.set(1050 + RRD4jWriteQueue.MAX_WRITE_DELAY);
+        queue.flushDue();
+        assertThat(written.get("a"), is(List.of(1000L, 1050L)));
+    }
+
+    @Test
+    public void flushOnlyWritesTheGivenDatabase() {
+        enqueue("a", 1000);
+        enqueue("b", 1000);
+
+        queue.flush("a");
+
+        assertThat(written.get("a"), is(List.of(1000L)));
+        assertThat(written.containsKey("b"), is(false));
+        assertThat(queue.size(), is(1));
+    }
+
+    @Test
+    public void updatesBeyondTheLimitOfADatabaseAreWrittenRightAway() {
+        for (int i = 0; i < RRD4jWriteQueue.MAX_PENDING_UPDATES - 1; i++) {
+            enqueue("a", 1000 + i);
+        }
+        assertThat(written.containsKey("a"), is(false));
+
+        enqueue("a", 1000 + RRD4jWriteQueue.MAX_PENDING_UPDATES - 1);
+
+        assertThat(written.get("a").size(), is(RRD4jWriteQueue.MAX_PENDING_UPDATES));
+        assertThat(queue.size(), is(0));
+        assertThat(errors, is(empty()));
+    }
+
+    @Test
+    public void updatesBeyondTheLimitOfAllDatabasesAreWrittenRightAway() {
+        int databases = RRD4jWriteQueue.MAX_QUEUED_UPDATES / (RRD4jWriteQueue.MAX_PENDING_UPDATES - 1) + 1;
+        for (int d = 0; d < databases; d++) {
+            for (int i = 0; i < RRD4jWriteQueue.MAX_PENDING_UPDATES - 1; i++) {
+                enqueue("db" + d, 1000 + i);
+            }
+        }
+
+        assertThat(written.isEmpty(), is(false));
+        assertThat(queue.size(), is(lessThan(RRD4jWriteQueue.MAX_QUEUED_UPDATES)));
+        assertThat(errors, is(empty()));
+    }
+
+    @Test
+    public void flushOfEntryCollectedByFlushDueDoesNotLoseOtherEntries() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        RRD4jWriteQueue queue = new RRD4jWriteQueue((name, item, states, times) -> {
+            if (first.getAndSet(false)) {
+                writing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            write(name, item, states, times);
+        }, clock::get);
+        List<String> names = List.of("a", "b", "c", "d");
+        for (String name : names) {
+            queue.enqueue(name, item, new DecimalType(1000), 1000);
+        }
+
+        // all entries are collected at once, and the write of the first one blocks while the others are still due
+        clock.set(1001);
+        Thread flushDue = new Thread(queue::flushDue);
+        flushDue.start();
+        assertThat(writing.await(10, TimeUnit.SECONDS), is(true));
+        for (String name : names) {
+            queue.enqueue(name, item, new DecimalType(1001), 1001);
+        }
+        // flushes the entries still due, and waits for the blocked one
+        Thread flush = new Thread(() -> names.forEach(queue::flush));
+        flush.start();
+        Thread.sleep(100);
+        release.countDown();
+        flush.join(10_000);
+        flushDue.join(10_000);
+
+        for (String name : names) {
+            assertThat(name, written.get(name), is(List.of(1000L, 1001L)));
+        }
+        assertThat(queue.size(), is(0));
+        assertThat(errors, is(empty()));
+
+        // none of the entries is left in a state in which it isn't scheduled anymore
+        for (String name : names) {
+            queue.enqueue(name, item, new DecimalType(1002), 1002);
+        }
+        clock.set(1003);
+        queue.flushDue();
+        for (String name : names) {
+            assertThat(name, written.get(name), is(List.of(1000L, 1001L, 1002L)));
+        }
+    }
+
+    @Test
+    public void concurrentFlushesWriteEachUpdateOnceAndInOrder() throws Exception {
+        int databases = 8;
+        int updates = 2000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> producers = new ArrayList<>();
+        for (int d = 0; d < databases; d++) {
+            String name = "db" + d;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < updates; i++) {
+                    enqueue(name, 1000 + i);
+                    if (i % 100 == 0) {
+                        queue.flush(name);
+                    }
+                }
+            }));
+        }
+        Thread ticker = new Thread(() -> {
+            while (running.get()) {
+                clock.incrementAndGet();
+                queue.flushDue();
+            }
+        });
+        Thread reader = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                queue.flush("db" + (i++ % databases));
+            }
+        });
+        ticker.start();
+        reader.start();
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join(60_000);
+        }
+        running.set(false);
+        ticker.join(10_000);
+        reader.join(10_000);
+        queue.flushAll();
+
+        assertThat(errors, is(empty()));
+        for (int d = 0; d < databases; d++) {
+            assertThat(written.get("db" + d).size(), is(updates));
+        }
+        assertThat(queue.size(), is(0));
+    }
+
+    private static List<Long> toList(long[] values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}